@@ -13,6 +13,9 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
@@ -24,6 +27,9 @@ import java.util.Scanner;
  */
 public class App {
     private static final int INVALID = -1;
+    private static final int PAGE_SIZE = 50;
+    private static final int SUGGESTIONS = 5;
+    private static final int SEARCH_RESULTS = 10;
     private static final Scanner SCANNER = new Scanner(System.in);
     private static final OptionChecker OPTION_CHECKER = new OptionChecker();
     private static BookCollector bookCollector;
@@ -50,7 +56,7 @@ public class App {
         do {
             showMenu();
             String option = SCANNER.nextLine();
-            choice = OPTION_CHECKER.checkOption(option, 6);
+            choice = OPTION_CHECKER.checkOption(option, 8);
             switch (choice) {
                 case 1:
                     listBooks().block();
@@ -79,6 +85,15 @@ public class App {
                         : "There are no books to delete.");
                     break;
                 case 6:
+                    System.out.println(exportBooks().onErrorResume(error -> Mono.just("Books weren't exported. Error:"
+                        + error.toString())).block());
+                    break;
+                case 7:
+                    System.out.println(importBooks().onErrorResume(error -> Mono.just("Books weren't imported. Error:"
+                        + error.toString())).block());
+                    break;
+                case 8:
+                    LOGGER.info(AuthorPool.report());
                     System.out.println("Goodbye.");
                     break;
                 default:
@@ -86,7 +101,7 @@ public class App {
                     break;
             }
             System.out.println("------------------------------------------------");
-        } while (choice != 6);
+        } while (choice != 8);
         bookCollector.checkClosure();
     }
 
@@ -94,13 +109,15 @@ public class App {
      * Displays the options.
      */
     private static void showMenu() {
-        System.out.println("Select one of the options below (1 - 6).");
+        System.out.println("Select one of the options below (1 - 8).");
         System.out.println("1. List books");
         System.out.println("2. Add a book");
         System.out.println("3. Edit a book");
         System.out.println("4. Find a book");
         System.out.println("5. Delete book");
-        System.out.println("6. Quit");
+        System.out.println("6. Export books");
+        System.out.println("7. Import books");
+        System.out.println("8. Quit");
     }
 
     /**
@@ -118,12 +135,18 @@ public class App {
                 .credential(new ConfigurationClientCredentials(connectionString))
                 .httpLogDetailLevel(HttpLogDetailLevel.HEADERS)
                 .buildAsyncClient();
+            try {
+                Book.useIdGenerator(IdGenerator.forName(optionalSetting(client, "BOOK_ID_FORMAT", "ulid")));
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("BOOK_ID_FORMAT isn't ulid or uuid, using ulid: ", e);
+            }
             DocumentProvider document = selectDocumentProvider(client);
             Mono<ImageProvider> imageProvider;
             try {
-                imageProvider = selectImageProvider(client);
+                imageProvider = selectImageProvider(client, document);
             } catch (IllegalArgumentException | IllegalStateException e) {
-                System.err.println("Could not set up image storage provider. Please check your settings: " + e.getMessage());
+                System.err.println("Could not set up image storage provider. Please check your settings: "
+                    + e.getMessage());
                 LOGGER.error("Error couldn't set up Image Provider: ", e);
                 return false;
             }
@@ -147,24 +170,79 @@ public class App {
         if (documentProvider.equalsIgnoreCase("Cosmos")) {
             CosmosSettings cosmosSettings = VAULT.getCosmosInformation().block();
             assert cosmosSettings != null;
-            return new CosmosDocumentProvider(cosmosSettings);
+            CosmosPartitioning partitioning = optionalSetting(client, "COSMOS_PARTITIONING", "id")
+                .equalsIgnoreCase("author") ? CosmosPartitioning.AUTHOR : CosmosPartitioning.ID;
+            boolean dualRead = Boolean.parseBoolean(optionalSetting(client, "COSMOS_DUAL_READ", "false"));
+            return new CosmosDocumentProvider(cosmosSettings, partitioning, dualRead);
+        } else if (documentProvider.equalsIgnoreCase("SegmentLog")) {
+            BookCodec codec;
+            try {
+                codec = BookCodec.forName(optionalSetting(client, "SEGMENT_LOG_CODEC", "json"));
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("SEGMENT_LOG_CODEC isn't json or binary, using json: ", e);
+                codec = BookCodec.JSON;
+            }
+            return new SegmentLogDocumentProvider(System.getProperty("user.dir"), codec);
         } else {
-            return new LocalDocumentProvider(System.getProperty("user.dir"));
+            boolean watch = Boolean.parseBoolean(optionalSetting(client, "LOCAL_WATCH_FILES", "false"));
+            int loadParallelism;
+            try {
+                loadParallelism = Integer.parseInt(optionalSetting(client, "LOCAL_LOAD_PARALLELISM",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            } catch (NumberFormatException e) {
+                LOGGER.error("LOCAL_LOAD_PARALLELISM isn't a number, using the number of processors: ", e);
+                loadParallelism = Runtime.getRuntime().availableProcessors();
+            }
+            boolean pathListing = Boolean.parseBoolean(optionalSetting(client, "LOCAL_PATH_LISTING", "false"));
+            return new LocalDocumentProvider(System.getProperty("user.dir"), watch, loadParallelism,
+                localLayout(client), pathListing);
         }
     }
 
     /**
-     * Sets up where to save the book image covers
+     * Reads how the local providers lay out the author directories. Books in either layout are always read.
+     *
+     * @param client - App Configuration client
+     * @return SHARDED if LOCAL_SHARDED_LAYOUT is true, FLAT otherwise
+     */
+    private static LibraryLayout localLayout(ConfigurationAsyncClient client) {
+        return Boolean.parseBoolean(optionalSetting(client, "LOCAL_SHARDED_LAYOUT", "false"))
+            ? LibraryLayout.SHARDED : LibraryLayout.FLAT;
+    }
+
+    /**
+     * Reads a setting that doesn't have to be present in App Configuration.
+     *
+     * @param client       - App Configuration client
+     * @param key          - the setting's key
+     * @param defaultValue - the value to use when the setting is missing
+     * @return the setting's value, or the default
+     */
+    private static String optionalSetting(ConfigurationAsyncClient client, String key, String defaultValue) {
+        return client.getSetting(key)
+            .map(setting -> setting.value())
+            .onErrorResume(error -> Mono.empty())
+            .defaultIfEmpty(defaultValue)
+            .block();
+    }
+
+    /**
+     * Sets up where to save the book image covers. Local covers are only sharded along with the JSON files of a
+     * LocalDocumentProvider; the other document providers store flat cover paths, so their covers stay flat.
      *
-     * @param client - App Configuration holds a variable taht determines where to store the covers
+     * @param client   - App Configuration holds a variable taht determines where to store the covers
+     * @param document - the document provider the covers are saved alongside
      * @return - the specified image storage
      */
-    private static Mono<ImageProvider> selectImageProvider(ConfigurationAsyncClient client) {
+    private static Mono<ImageProvider> selectImageProvider(ConfigurationAsyncClient client,
+                                                           DocumentProvider document) {
+        LibraryLayout layout = document instanceof LocalDocumentProvider
+            ? ((LocalDocumentProvider) document).layout() : LibraryLayout.FLAT;
         return client.getSetting("IMAGE_STORAGE_TYPE").flatMap(storageImage -> {
             String imageProvider = storageImage.value();
             assert imageProvider != null;
             if (imageProvider.equalsIgnoreCase("Local")) {
-                return Mono.just(new LocalImageProvider(System.getProperty("user.dir")));
+                return Mono.just(new LocalImageProvider(System.getProperty("user.dir"), layout));
             } else if (imageProvider.equalsIgnoreCase("BlobStorage")) {
                 return VAULT.getBlobInformation().map(BlobImageProvider::new);
             } else {
@@ -255,18 +333,56 @@ public class App {
      * Gets the list of book stored in the document storage
      */
     private static Mono<Void> listBooks() {
-        return bookCollector.getBooks().collectList().map(list -> {
-            if (list.isEmpty()) {
-                System.out.println("There are no books.");
-                return list;
-            }
-            System.out.println("Here are all the books you have: ");
-            for (int i = 0; i < list.size(); i++) {
-                Book book1 = list.get(i);
-                System.out.println(i + 1 + ". " + book1);
-            }
-            return list;
-        }).then();
+        return bookCollector.getBooks(PAGE_SIZE, null)
+            .expand(page -> page.getContinuationKey() == null ? Mono.empty()
+                : bookCollector.getBooks(PAGE_SIZE, page.getContinuationKey()))
+            .concatMapIterable(BookPage::getBooks)
+            .index()
+            .doOnNext(entry -> {
+                if (entry.getT1() == 0) {
+                    System.out.println("Here are all the books you have: ");
+                }
+                System.out.println(entry.getT1() + 1 + ". " + entry.getT2());
+            })
+            .hasElements()
+            .doOnNext(hasBooks -> {
+                if (!hasBooks) {
+                    System.out.println("There are no books.");
+                }
+            }).then();
+    }
+
+    /**
+     * Exports the catalog to an NDJSON file the user names.
+     *
+     * @return {@Link Mono} String which tells how many books were exported
+     */
+    private static Mono<String> exportBooks() {
+        System.out.println("File to export to? (Names ending with .gz are gzipped.)");
+        Path file = Paths.get(SCANNER.nextLine());
+        return bookCollector.exportBooks(file).map(count -> "Exported " + count + " books to " + file + ".");
+    }
+
+    /**
+     * Imports the books in an NDJSON file the user names.
+     *
+     * @return {@Link Mono} String which tells how many books were imported
+     */
+    private static Mono<String> importBooks() {
+        System.out.println("File to import from?");
+        Path file = Paths.get(SCANNER.nextLine());
+        if (!Files.isRegularFile(file)) {
+            return Mono.just("There is no file at " + file + ".");
+        }
+        return bookCollector.importBooks(file)
+            .doOnNext(result -> {
+                if (!result.isSuccessful()) {
+                    LOGGER.error("Couldn't import " + result.getBook() + ": ", result.getError());
+                }
+            })
+            .filter(SaveResult::isSuccessful)
+            .count()
+            .map(count -> "Imported " + count + " books from " + file + ".");
     }
 
     /**
@@ -318,8 +434,9 @@ public class App {
         do {
             System.out.println("1. Search by book title?");
             System.out.println("2. Search by author?");
+            System.out.println("3. Search by keywords?");
             String option = SCANNER.nextLine();
-            choice = OPTION_CHECKER.checkOption(option, 2);
+            choice = OPTION_CHECKER.checkOption(option, 3);
         } while (choice == INVALID);
         switch (choice) {
             case 0:
@@ -332,16 +449,20 @@ public class App {
                 System.out.println("What is the author's full name?");
                 String author = SCANNER.nextLine();
                 return find("author", author);
+            case 3:
+                System.out.println("What words are in the title or author's name?");
+                String keywords = SCANNER.nextLine();
+                return find("keywords", keywords);
             default:
-                System.out.println("Please enter a number between 1 or 2.");
+                System.out.println("Please enter a number between 1 and 3.");
         }
         return Mono.just("");
     }
 
     /**
-     * Looks for the book based on title/author.
+     * Looks for the book based on title/author/keywords.
      *
-     * @param option - String that determines whether the user is looking by title or author
+     * @param option - String that determines whether the user is looking by title, author or keywords
      * @param input  - the title/author the user wants to find in the list
      * @return - {@Link Mono} String which tells if the book was found or not
      */
@@ -350,16 +471,27 @@ public class App {
         if (option.contentEquals("author")) {
             String[] name = parseAuthorsName(input.split(" "));
             booksToFind = bookCollector.findBook(new Author(name[0], name[1]));
+        } else if (option.contentEquals("keywords")) {
+            booksToFind = bookCollector.searchBooks(input, SEARCH_RESULTS);
         } else {
             booksToFind = bookCollector.findBook(input);
         }
         return booksToFind.collectList().flatMap(list -> {
             if (list.isEmpty()) {
                 System.out.printf("There are no books %s.\n", option.contentEquals("title") ? "with that title"
-                    : "by that author");
+                    : option.contentEquals("author") ? "by that author" : "matching those words");
+                if (option.contentEquals("title")) {
+                    return bookCollector.searchTitles(input, SUGGESTIONS).collectList().map(suggestions -> {
+                        if (!suggestions.isEmpty()) {
+                            System.out.println("Did you mean:");
+                            suggestions.forEach(book -> System.out.println(" * " + book));
+                        }
+                        return "";
+                    });
+                }
             } else if (list.size() == 1) {
                 System.out.printf("Here is a book %s %s.%n", option.contentEquals("title") ? "titled"
-                    : "by", input);
+                    : option.contentEquals("author") ? "by" : "matching", input);
                 System.out.println(" * " + list.get(0));
                 System.out.println("Would you like to view it?");
                 String choice = getYesOrNo();
@@ -371,7 +503,7 @@ public class App {
             } else {
                 System.out.printf("Here are books %s %s. Please enter the number you wish to view."
                     + " (Enter \"Q\" to return to menu.)%n", option.contentEquals("title") ? "titled"
-                    : "by", input);
+                    : option.contentEquals("author") ? "by" : "matching", input);
                 int choice = getBook(list);
                 int bookNum = choice - 1;
                 if (choice != 0) {
@@ -418,8 +550,8 @@ public class App {
                     return Mono.just(list.get(0));
                 }
             } else {
-                System.out.printf("Here are matching books. Enter the number to %s :  (Enter \"Q\" to return to menu.) ",
-                    modifier.contentEquals("delete") ? "to delete" : "to edit");
+                System.out.printf("Here are matching books. Enter the number to %s :  "
+                    + "(Enter \"Q\" to return to menu.) ", modifier.contentEquals("delete") ? "to delete" : "to edit");
                 int choice = getBook(list);
                 if (choice != 0 && modifier.contentEquals("delete")) {
                     System.out.println("Delete \"" + list.get(choice - 1) + "\"? Enter Y or N.");
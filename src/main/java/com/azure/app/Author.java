@@ -3,6 +3,7 @@
 
 package com.azure.app;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 final class Author {
@@ -20,6 +21,40 @@ final class Author {
         this.firstName = firstName;
     }
 
+    /**
+     * Returns the shared Author object with these names. Jackson reads every author through here, so books read from
+     * JSON share their authors instead of each holding a copy.
+     *
+     * @param firstName - the author's first name
+     * @param lastName  - the author's last name
+     * @return the Author object from the {@link AuthorPool}
+     */
+    @JsonCreator
+    static Author of(@JsonProperty("firstName") String firstName, @JsonProperty("lastName") String lastName) {
+        return AuthorPool.author(firstName, lastName);
+    }
+
+    /**
+     * Puts a first or last name into the form books are matched by: normalized like a title, and without a trailing
+     * period, since a file name can't keep one and so "J." and "J" are stored as the same author.
+     *
+     * @param name - a first or last name
+     * @return the normalized name
+     */
+    static String normalizeName(String name) {
+        return withoutTrailingPeriod(TitleIndex.normalize(name));
+    }
+
+    /**
+     * Removes a trailing period from a name, as the directories books are stored in do.
+     *
+     * @param name - a first or last name
+     * @return the name without its trailing period
+     */
+    static String withoutTrailingPeriod(String name) {
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
     /**
      * Returns the author's last name.
      *
@@ -0,0 +1,142 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares one Author object, and one copy of each name, between all the books that have the same author.
+ *
+ * <p>Every book read from a JSON file, a Cosmos item, a segment record or the catalog snapshot would otherwise get
+ * its own Author and its own copies of the name strings, so a prolific author is repeated thousands of times on the
+ * heap. Authors are immutable, so sharing them is safe. The pool keeps one author for each normalized name it has
+ * seen for the life of the JVM; there are far fewer authors than books, so it stays small next to the catalog it
+ * deduplicates.</p>
+ *
+ * <p>The bytes saved are estimated for a 64-bit JVM with compressed references, counting the Author objects and
+ * strings that were dropped in favor of the pooled ones.</p>
+ */
+final class AuthorPool {
+    private static final int AUTHOR_BYTES = 24;
+    private static final int STRING_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private static final Map<String, Author> AUTHORS = new ConcurrentHashMap<>();
+    private static final Map<String, String> NAMES = new ConcurrentHashMap<>();
+    private static final LongAdder BYTES_SAVED = new LongAdder();
+    private static final LongAdder LOOKUPS = new LongAdder();
+
+    private AuthorPool() {
+    }
+
+    /**
+     * Returns the pooled author with these names, adding one if there isn't one yet. Authors are pooled by their
+     * {@link Author#normalizeName normalized names}, the same way books are matched, so "J." and "J" take one place
+     * in the pool. A book keeps the spelling it was saved with, though: a spelling that differs from the pooled one
+     * gets a new Author, which takes the pooled one's place. An author missing a name isn't pooled, so it stays as
+     * invalid as it was.
+     *
+     * @param firstName - the author's first name
+     * @param lastName  - the author's last name
+     * @return the shared Author object
+     */
+    static Author author(String firstName, String lastName) {
+        if (firstName == null || lastName == null) {
+            return new Author(firstName, lastName);
+        }
+        LOOKUPS.increment();
+        String key = key(firstName, lastName);
+        Author pooled = AUTHORS.get(key);
+        if (pooled != null && sameSpelling(pooled, firstName, lastName)) {
+            BYTES_SAVED.add(AUTHOR_BYTES + stringBytes(firstName) + stringBytes(lastName));
+            return pooled;
+        }
+        Author author = new Author(name(firstName), name(lastName));
+        if (pooled != null) {
+            AUTHORS.replace(key, pooled, author);
+            return author;
+        }
+        pooled = AUTHORS.putIfAbsent(key, author);
+        if (pooled != null && sameSpelling(pooled, firstName, lastName)) {
+            BYTES_SAVED.add(AUTHOR_BYTES);
+            return pooled;
+        }
+        return author;
+    }
+
+    /**
+     * Returns the pooled author with the same names as the given one.
+     *
+     * @param author - Author of a book about to be kept in memory
+     * @return the shared Author object, or the author itself if it's null
+     */
+    static Author canonical(Author author) {
+        return author == null ? null : author(author.getFirstName(), author.getLastName());
+    }
+
+    /**
+     * Returns the pooled copy of a name, so authors who share a last name also share the string.
+     *
+     * @param name - a first or last name
+     * @return the shared string
+     */
+    private static String name(String name) {
+        String pooled = NAMES.putIfAbsent(name, name);
+        if (pooled == null) {
+            return name;
+        }
+        if (pooled != name) {
+            BYTES_SAVED.add(stringBytes(name));
+        }
+        return pooled;
+    }
+
+    private static String key(String firstName, String lastName) {
+        return Author.normalizeName(lastName) + '\u0000' + Author.normalizeName(firstName);
+    }
+
+    private static boolean sameSpelling(Author pooled, String firstName, String lastName) {
+        return pooled.getFirstName().equals(firstName) && pooled.getLastName().equals(lastName);
+    }
+
+    /**
+     * Estimates the heap taken by a string: the String object and its character array, rounded up to 8 bytes.
+     *
+     * @param value - the string
+     * @return the estimated size in bytes
+     */
+    private static long stringBytes(String value) {
+        return STRING_BYTES + ((ARRAY_HEADER_BYTES + 2L * value.length() + 7) & ~7L);
+    }
+
+    /**
+     * Returns the estimated number of bytes that pooling has saved so far.
+     *
+     * @return the estimate in bytes
+     */
+    static long bytesSaved() {
+        return BYTES_SAVED.sum();
+    }
+
+    /**
+     * Returns how many distinct authors are pooled.
+     *
+     * @return the number of authors
+     */
+    static int size() {
+        return AUTHORS.size();
+    }
+
+    /**
+     * Describes the pool for the logs.
+     *
+     * @return how many authors are pooled, how many lookups they served and about how much memory was saved
+     */
+    static String report() {
+        return "Author pool: " + size() + " authors shared by " + LOOKUPS.sum() + " lookups, about "
+            + bytesSaved() / 1024 + " KB saved.";
+    }
+}
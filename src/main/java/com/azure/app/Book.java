@@ -6,9 +6,11 @@ package com.azure.app;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.net.URI;
-import java.util.UUID;
+import java.util.function.Supplier;
 
 final class Book {
+    private static volatile IdGenerator idGenerator = IdGenerator.ULID;
+
     @JsonProperty("title")
     private String title;
     @JsonProperty("author")
@@ -17,6 +19,7 @@ final class Book {
     private URI cover;
     @JsonProperty("id")
     private String id;
+    private volatile Supplier<Book> stored;
 
     Book() {
     }
@@ -26,7 +29,58 @@ final class Book {
         this.title = title;
         this.author = author;
         this.cover = cover;
-        id = UUID.randomUUID().toString();
+        id = idGenerator.nextId();
+    }
+
+    Book(String title, Author author, URI cover, String id) {
+        this.title = title;
+        this.author = author;
+        this.cover = cover;
+        this.id = id;
+    }
+
+    /**
+     * Sets the generator that gives new books their ids. Books that already exist keep theirs.
+     *
+     * @param generator - the IdGenerator to use from now on
+     */
+    static void useIdGenerator(IdGenerator generator) {
+        idGenerator = generator;
+    }
+
+    /**
+     * Creates a book whose title and author are already known, such as from the path of its JSON file, and whose
+     * cover and id are read from the stored book the first time either is asked for.
+     *
+     * @param title  - the book's title
+     * @param author - the book's author
+     * @param stored - reads the stored book; it's called at most once, and may return null if it can't be read
+     * @return the Book object
+     */
+    static Book stored(String title, Author author, Supplier<Book> stored) {
+        Book book = new Book(title, author, null, null);
+        book.stored = stored;
+        return book;
+    }
+
+    /**
+     * Reads the cover and id from the stored book, if this book was created by {@link #stored} and they haven't been
+     * read yet. A book that can't be read keeps a null cover, so it isn't valid.
+     */
+    private void readStored() {
+        if (stored == null) {
+            return;
+        }
+        synchronized (this) {
+            if (stored != null) {
+                Book book = stored.get();
+                if (book != null) {
+                    cover = book.cover;
+                    id = book.id;
+                }
+                stored = null;
+            }
+        }
     }
 
     /**
@@ -52,12 +106,16 @@ final class Book {
      *
      * @return File of image
      */
+    @JsonProperty("cover")
     URI getCover() {
+        readStored();
         return cover;
     }
 
 
+    @JsonProperty("id")
     String id() {
+        readStored();
         return id;
     }
 
@@ -73,7 +131,7 @@ final class Book {
      * false - otherwise
      */
     boolean isValid() {
-        if (cover == null) {
+        if (getCover() == null) {
             return false;
         }
         if (author.getLastName() == null || author.getLastName().isEmpty()
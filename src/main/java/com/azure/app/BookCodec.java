@@ -0,0 +1,82 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Turns books into bytes and back. Codecs are stateless and safe to share between threads.
+ *
+ * <p>JSON is what the per-book files and Cosmos hold. BINARY is a compact length-prefixed encoding for the local
+ * stores that never leave the machine. Its first byte can't start a JSON document, so {@link #decodeAny} can read a
+ * store that holds records in both formats.</p>
+ */
+interface BookCodec {
+    JsonBookCodec JSON = new JsonBookCodec(false);
+    BookCodec BINARY = new BinaryBookCodec();
+
+    /**
+     * Returns the name the codec is selected by.
+     *
+     * @return "json" or "binary"
+     */
+    String name();
+
+    /**
+     * Encodes the book.
+     *
+     * @param book - the Book object to encode
+     * @return the encoded book
+     * @throws IOException if the book can't be encoded
+     */
+    byte[] encode(Book book) throws IOException;
+
+    /**
+     * Decodes a book encoded by this codec.
+     *
+     * @param data   - the buffer holding the encoded book
+     * @param offset - where the encoded book starts
+     * @param length - how many bytes it takes up
+     * @return the decoded Book object
+     * @throws IOException if the bytes aren't a book in this codec's format
+     */
+    Book decode(byte[] data, int offset, int length) throws IOException;
+
+    default Book decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * Decodes a book encoded by either codec, telling them apart by the first byte.
+     *
+     * @param data   - the buffer holding the encoded book
+     * @param offset - where the encoded book starts
+     * @param length - how many bytes it takes up
+     * @return the decoded Book object
+     * @throws IOException if the bytes aren't a book
+     */
+    static Book decodeAny(byte[] data, int offset, int length) throws IOException {
+        return BinaryBookCodec.isBinary(data, offset, length) ? BINARY.decode(data, offset, length)
+            : JSON.decode(data, offset, length);
+    }
+
+    /**
+     * Finds a codec by name.
+     *
+     * @param name - "json" or "binary", in any case
+     * @return the codec
+     * @throws IllegalArgumentException if no codec has that name
+     */
+    static BookCodec forName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "json":
+                return JSON;
+            case "binary":
+                return BINARY;
+            default:
+                throw new IllegalArgumentException("Codec '" + name + "' is not recognized.");
+        }
+    }
+}
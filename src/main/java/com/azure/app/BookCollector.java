@@ -8,10 +8,14 @@ import reactor.core.publisher.Mono;
 
 import java.io.File;
 import java.net.URI;
+import java.nio.file.Path;
 
 final class BookCollector {
     private ImageProvider imageProvider;
     private DocumentProvider documentProvider;
+    private final FullTextIndex fullTextIndex = new FullTextIndex();
+    private final Mono<Void> fullTextIndexLoaded;
+    private volatile boolean fullTextIndexUsed;
 
     /**
      * Constructor for BookCollector
@@ -22,6 +26,10 @@ final class BookCollector {
     BookCollector(DocumentProvider documentCollection, ImageProvider imageProvider) {
         this.documentProvider = documentCollection;
         this.imageProvider = imageProvider;
+        this.fullTextIndexLoaded = Mono.defer(() -> {
+            fullTextIndexUsed = true;
+            return documentProvider.getBooks().doOnNext(fullTextIndex::add).then();
+        }).cache();
     }
 
     /**
@@ -33,7 +41,55 @@ final class BookCollector {
     Mono<Void> saveBook(Book book) {
         return book.isValid() && isFile(book.getCover())
             ? documentProvider.saveBook(book.getTitle(), book.getAuthor(), book.getCover())
-            .then(imageProvider.saveImage(book)) : Mono.error(new IllegalArgumentException("Book can't be saved."));
+            .then(imageProvider.saveImage(book)).then(indexSaved(book))
+            : Mono.error(new IllegalArgumentException("Book can't be saved."));
+    }
+
+    /**
+     * Saves many books to the storage system. Documents are written in batches by the document provider, and the
+     * covers of the books whose documents were saved are then written by the image provider. Books are requested
+     * from the Flux only as results are consumed, so an import of any size runs in bounded memory.
+     *
+     * @param books - Flux of the Book objects to save
+     * @return Flux of one SaveResult per book, not necessarily in the order the books were given
+     */
+    Flux<SaveResult> saveBooks(Flux<Book> books) {
+        return books.publish(shared -> Flux.merge(
+            shared.filter(book -> !canSave(book))
+                .map(book -> SaveResult.failure(book, new IllegalArgumentException("Book can't be saved."))),
+            documentProvider.saveBooks(shared.filter(BookCollector::canSave))
+                .publish(documents -> Flux.merge(
+                    documents.filter(result -> !result.isSuccessful()),
+                    imageProvider.saveImages(documents.filter(SaveResult::isSuccessful).map(SaveResult::getBook))))))
+            .concatMap(result -> result.isSuccessful() ? indexSaved(result.getBook()).thenReturn(result)
+                : Mono.just(result));
+    }
+
+    /**
+     * Writes the whole catalog to one NDJSON file, gzipped if its name ends with .gz. Covers aren't included.
+     *
+     * @param file - the file to write
+     * @return {@Link Mono} of the number of books written
+     */
+    Mono<Long> exportBooks(Path file) {
+        return LibraryArchive.export(documentProvider.getBooks(), file);
+    }
+
+    /**
+     * Saves the books in an NDJSON file written by exportBooks through the document provider's bulk save. The
+     * covers are expected to be in the image storage already, so only the documents are written.
+     *
+     * @param file - the file to read, gzipped or not
+     * @return Flux of one SaveResult per book in the file
+     */
+    Flux<SaveResult> importBooks(Path file) {
+        return LibraryArchive.importBooks(file, documentProvider)
+            .concatMap(result -> result.isSuccessful() ? indexSaved(result.getBook()).thenReturn(result)
+                : Mono.just(result));
+    }
+
+    private static boolean canSave(Book book) {
+        return book.isValid() && isFile(book.getCover());
     }
 
     /**
@@ -45,6 +101,28 @@ final class BookCollector {
         return documentProvider.getBooks();
     }
 
+    /**
+     * Returns one page of books, sorted by author and title.
+     *
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    Mono<BookPage> getBooks(int pageSize, String continuationKey) {
+        return documentProvider.getBooks(pageSize, continuationKey);
+    }
+
+    /**
+     * Returns one page of books in id order, which is the order they were made in for books with ULID ids.
+     *
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    Mono<BookPage> getBooksById(int pageSize, String continuationKey) {
+        return documentProvider.getBooksById(pageSize, continuationKey);
+    }
+
     /**
      * Overwrites the old book with the contents in the new book
      *
@@ -55,7 +133,9 @@ final class BookCollector {
      */
     Mono<Void> editBook(Book oldBook, Book newBook, boolean saveCover) {
         return documentProvider.editBook(oldBook, newBook, saveCover).
-            then(imageProvider.editImage(oldBook, newBook, saveCover));
+            then(imageProvider.editImage(oldBook, newBook, saveCover))
+            .then(Mono.fromRunnable(() -> fullTextIndex.remove(oldBook)))
+            .then(indexSaved(newBook));
     }
 
     /**
@@ -68,6 +148,7 @@ final class BookCollector {
      */
     Mono<Void> deleteBook(Book book) {
         return book.isValid() ? documentProvider.deleteBook(book).then(imageProvider.deleteImage(book))
+            .then(Mono.fromRunnable(() -> fullTextIndex.remove(book)))
             : Mono.error(new IllegalArgumentException("Book wasn't deleted."));
     }
 
@@ -81,6 +162,47 @@ final class BookCollector {
         return documentProvider.findBook(title);
     }
 
+    /**
+     * Finds books for search-as-you-type by title prefix, allowing for typos where the provider supports it.
+     *
+     * @param query - what the user has typed so far
+     * @param limit - the most books to return
+     * @return - Flux of the matching books, best matches first
+     */
+    Flux<Book> searchTitles(String query, int limit) {
+        return documentProvider.searchTitles(query, limit);
+    }
+
+    /**
+     * Finds the books whose titles and author names best match the keywords, ranked by BM25. The index is built
+     * from the document provider on the first search and kept up to date by saves, edits and deletes made through
+     * this collector.
+     *
+     * @param keywords - words to look for, such as "tolkien ring"
+     * @param limit    - the most books to return
+     * @return - Flux of the best matching books, best first
+     */
+    Flux<Book> searchBooks(String keywords, int limit) {
+        return fullTextIndexLoaded.thenMany(Flux.defer(() -> Flux.fromIterable(fullTextIndex.search(keywords,
+            limit))));
+    }
+
+    /**
+     * Indexes the book as the document provider stored it, so search results carry the stored cover. Until the
+     * first search there's no index to keep up to date, since loading it will read the book anyway.
+     *
+     * @param book - Book that was saved
+     * @return {@Link Mono} that completes once the book is indexed
+     */
+    private Mono<Void> indexSaved(Book book) {
+        if (!fullTextIndexUsed) {
+            return Mono.empty();
+        }
+        return documentProvider.findBook(book.getTitle(), book.getAuthor())
+            .doOnNext(fullTextIndex::add)
+            .then();
+    }
+
     /**
      * Filters out the books based on the specified author.
      *
@@ -91,6 +213,32 @@ final class BookCollector {
         return documentProvider.findBook(author);
     }
 
+    /**
+     * Returns one page of the books by the author, sorted by title.
+     *
+     * @param author          - Contains the name of the author the user is looking for
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    Mono<BookPage> findBook(Author author, int pageSize, String continuationKey) {
+        return documentProvider.findBook(author, pageSize, continuationKey);
+    }
+
+    /**
+     * Returns one page of the books whose authors' last names fall between two names, such as "M" to "N", sorted by
+     * author and title.
+     *
+     * @param fromLastName    - the first last name in the range
+     * @param toLastName      - the last name, or last name prefix, that ends the range
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    Mono<BookPage> findBooks(String fromLastName, String toLastName, int pageSize, String continuationKey) {
+        return documentProvider.findBooks(fromLastName, toLastName, pageSize, continuationKey);
+    }
+
     /**
      * Determines whether the collection has books or not.
      *
@@ -138,6 +286,10 @@ final class BookCollector {
     void checkClosure() {
         if (documentProvider instanceof CosmosDocumentProvider) {
             ((CosmosDocumentProvider) documentProvider).closeStorage();
+        } else if (documentProvider instanceof LocalDocumentProvider) {
+            ((LocalDocumentProvider) documentProvider).closeStorage();
+        } else if (documentProvider instanceof SegmentLogDocumentProvider) {
+            ((SegmentLogDocumentProvider) documentProvider).closeStorage();
         }
     }
 }
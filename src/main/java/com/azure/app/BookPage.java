@@ -0,0 +1,114 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One page of books, sorted by author last name, author first name and title, along with the key that continues
+ * the listing after it.
+ */
+final class BookPage {
+    static final Comparator<Book> ORDER = Comparator.comparing((Book book) -> book.getAuthor().getLastName())
+        .thenComparing(book -> book.getAuthor().getFirstName())
+        .thenComparing(Book::getTitle);
+
+    private final List<Book> books;
+    private final String continuationKey;
+
+    /**
+     * Constructor for BookPage
+     *
+     * @param books           - the books on this page, in order
+     * @param continuationKey - the key to pass to get the next page, or null if this is the last page
+     */
+    BookPage(List<Book> books, String continuationKey) {
+        this.books = Collections.unmodifiableList(books);
+        this.continuationKey = continuationKey;
+    }
+
+    List<Book> getBooks() {
+        return books;
+    }
+
+    /**
+     * Returns the opaque key that continues the listing after this page.
+     *
+     * @return the continuation key, or null if there are no more books
+     */
+    String getContinuationKey() {
+        return continuationKey;
+    }
+
+    /**
+     * Returns the key a book is sorted by. The names and title are separated by a character that can't appear in
+     * any of them, so the keys sort in the same order as ORDER.
+     *
+     * @param book - the Book object
+     * @return String made up of the last name, first name and title
+     */
+    static String sortKey(Book book) {
+        return authorPrefix(book.getAuthor()) + book.getTitle();
+    }
+
+    /**
+     * Returns the part of the sort key shared by every book of the author.
+     *
+     * @param author - the Author object
+     * @return String made up of the last name and first name
+     */
+    static String authorPrefix(Author author) {
+        return author.getLastName() + '\u0000' + author.getFirstName() + '\u0000';
+    }
+
+    /**
+     * Checks whether the author's last name falls between two names, including both ends and every name that starts
+     * with the second one.
+     *
+     * @param author       - the Author object
+     * @param fromLastName - the first last name in the range
+     * @param toLastName   - the last name, or last name prefix, that ends the range
+     * @return true if the author is in the range
+     */
+    static boolean inAuthorRange(Author author, String fromLastName, String toLastName) {
+        String lastName = author.getLastName();
+        return lastName.compareTo(fromLastName) >= 0
+            && (lastName.compareTo(toLastName) <= 0 || lastName.startsWith(toLastName));
+    }
+
+    /**
+     * Returns the first sort key after every book whose author's last name starts with the prefix.
+     *
+     * @param lastNamePrefix - the last name, or start of a last name
+     * @return the key that bounds the range from above
+     */
+    static String lastNameBound(String lastNamePrefix) {
+        return lastNamePrefix + Character.MAX_VALUE;
+    }
+
+    /**
+     * Encodes the sort key of the last book on a page as a continuation key.
+     *
+     * @param sortKey - the sort key of the last book returned
+     * @return the opaque continuation key
+     */
+    static String encodeKey(String sortKey) {
+        return Base64.getUrlEncoder().encodeToString(sortKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a continuation key produced by encodeKey.
+     *
+     * @param continuationKey - the opaque continuation key
+     * @return the sort key of the last book returned
+     * @throws IllegalArgumentException if the key wasn't produced by encodeKey
+     */
+    static String decodeKey(String continuationKey) {
+        return new String(Base64.getUrlDecoder().decode(continuationKey), StandardCharsets.UTF_8);
+    }
+}
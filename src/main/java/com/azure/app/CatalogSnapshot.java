@@ -0,0 +1,196 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary copy of the local catalog, so that start-up doesn't have to walk and parse every JSON file.
+ *
+ * <p>The snapshot records the modification time of every directory in lib/jsonFiles when the catalog was last known
+ * to match the disk. Adding or removing a book, or an author directory, changes one of those times, so the snapshot
+ * is only used when all of them are unchanged. A JSON file rewritten in place by another process doesn't change its
+ * directory and isn't noticed; run with the directory watcher if other processes edit books.</p>
+ */
+final class CatalogSnapshot {
+    static final String SNAPSHOT_PATH = Paths.get("lib", "catalog.snapshot").toString();
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogSnapshot.class);
+    private static final int MAGIC = 0x43415401;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final Path jsonRoot;
+
+    /**
+     * Constructor for CatalogSnapshot
+     *
+     * @param root - the directory the library is stored in
+     */
+    CatalogSnapshot(String root) {
+        this.file = Paths.get(root, SNAPSHOT_PATH);
+        this.jsonRoot = Paths.get(root, Constants.JSON_PATH);
+    }
+
+    /**
+     * Returns the modification time of a directory, or -1 if it doesn't exist.
+     *
+     * @param directory - the directory to check
+     * @return the modification time in nanoseconds
+     */
+    static long modifiedTime(Path directory) {
+        try {
+            return Files.getLastModifiedTime(directory).to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Memory-maps the snapshot and, if it's intact and every recorded directory is unchanged, passes each book to
+     * the consumer.
+     *
+     * @param directoryTimes - filled with the recorded directory times, keyed by path relative to lib/jsonFiles
+     * @param books          - receives each JSON file and its book
+     * @return true if the books were loaded, false if the catalog has to be read from the JSON files
+     */
+    boolean load(Map<String, Long> directoryTimes, BiConsumer<File, Book> books) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < 20) {
+                return false;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer body = buffer.duplicate();
+            body.limit(body.limit() - 4);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (buffer.getInt(buffer.limit() - 4) != (int) crc.getValue()) {
+                LOGGER.warn("Catalog snapshot is corrupt, rebuilding it.");
+                return false;
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return false;
+            }
+            int directoryCount = buffer.getInt();
+            int bookCount = buffer.getInt();
+            for (int i = 0; i < directoryCount; i++) {
+                String directory = readString(buffer);
+                long time = buffer.getLong();
+                if (modifiedTime(jsonRoot.resolve(directory)) != time) {
+                    LOGGER.info("Catalog snapshot is out of date, reading the JSON files.");
+                    directoryTimes.clear();
+                    return false;
+                }
+                directoryTimes.put(directory, time);
+            }
+            for (int i = 0; i < bookCount; i++) {
+                File jsonFile = jsonRoot.resolve(readString(buffer)).toFile();
+                String title = readString(buffer);
+                String lastName = readString(buffer);
+                String firstName = readString(buffer);
+                String cover = readString(buffer);
+                String id = readString(buffer);
+                books.accept(jsonFile, new Book(title, AuthorPool.author(firstName, lastName),
+                    cover.isEmpty() ? null : URI.create(cover), id.isEmpty() ? null : id));
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            LOGGER.warn("Couldn't read the catalog snapshot, rebuilding it: ", e);
+            directoryTimes.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and moves it into place, so a crash never leaves a partial snapshot.
+     *
+     * @param directoryTimes - the directory times the catalog matches, keyed by path relative to lib/jsonFiles
+     * @param catalog        - every JSON file and its book
+     */
+    void write(Map<String, Long> directoryTimes, Map<File, Book> catalog) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream stream = Files.newOutputStream(temporary);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(directoryTimes.size());
+            out.writeInt(catalog.size());
+            for (Map.Entry<String, Long> directory : directoryTimes.entrySet()) {
+                writeString(out, directory.getKey());
+                out.writeLong(directory.getValue());
+            }
+            for (Map.Entry<File, Book> entry : catalog.entrySet()) {
+                Book book = entry.getValue();
+                writeString(out, jsonRoot.relativize(entry.getKey().toPath()).toString());
+                writeString(out, book.getTitle());
+                writeString(out, book.getAuthor().getLastName());
+                writeString(out, book.getAuthor().getFirstName());
+                writeString(out, book.getCover() == null ? "" : book.getCover().toString());
+                writeString(out, book.id() == null ? "" : book.id());
+            }
+            out.flush();
+            // The checksum covers everything above, so it's written to the raw stream.
+            new DataOutputStream(stream).writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            LOGGER.error("Couldn't write the catalog snapshot: ", e);
+            return;
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.error("Couldn't replace the catalog snapshot: ", e);
+        }
+    }
+
+    /**
+     * Removes the snapshot, so a crash before the next write falls back to reading the JSON files.
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.error("Couldn't remove the catalog snapshot: ", e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
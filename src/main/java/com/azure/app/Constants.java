@@ -3,12 +3,35 @@
 
 package com.azure.app;
 
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
 import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class Constants {
     static final JsonHandler SERIALIZER = new JsonHandler();
     static final String JSON_PATH = Paths.get("lib", "jsonFiles").toString();
     static final String IMAGE_PATH = Paths.get("lib", "images").toString();
+    static final int BULK_BATCH_SIZE = 1000;
+    static final int BULK_CONCURRENCY = 16;
+    /**
+     * Runs the blocking file calls of the local providers, so they never stall a thread that other subscribers
+     * depend on. The pool is bounded, and its daemon threads don't keep the application alive.
+     */
+    static final Scheduler LOCAL_IO = Schedulers.fromExecutorService(Executors.newFixedThreadPool(
+        Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "local-io-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
     static final String BLOB_CREDENTIALS = "BLOB-INFO";
     static final String COSMOS_CREDENTIALS = "COSMOS-INFO";
     static final String APP_CONFIGURATION_CREDENTIALS = "AZURE-APPCONFIG";
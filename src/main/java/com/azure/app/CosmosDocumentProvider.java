@@ -6,15 +6,16 @@ package com.azure.app;
 import com.azure.data.cosmos.ConnectionMode;
 import com.azure.data.cosmos.ConnectionPolicy;
 import com.azure.data.cosmos.CosmosClient;
+import com.azure.data.cosmos.CosmosClientException;
 import com.azure.data.cosmos.CosmosContainer;
 import com.azure.data.cosmos.CosmosContainerProperties;
 import com.azure.data.cosmos.CosmosContainerResponse;
 import com.azure.data.cosmos.CosmosDatabase;
 import com.azure.data.cosmos.CosmosItemProperties;
+import com.azure.data.cosmos.CosmosItemRequestOptions;
 import com.azure.data.cosmos.FeedOptions;
 import com.azure.data.cosmos.FeedResponse;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.azure.data.cosmos.PartitionKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.Exceptions;
@@ -28,34 +29,111 @@ import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 
 import static com.azure.app.Constants.IMAGE_PATH;
 
 final class CosmosDocumentProvider implements DocumentProvider {
+    private static final String DATABASE_ID = "book-inventory";
+    private static final int NOT_FOUND = 404;
     private static Logger logger = LoggerFactory.getLogger(CosmosDocumentProvider.class);
     private CosmosClient cosmosClient;
     private Mono<CosmosContainer> bookCollection;
-    private static ObjectMapper mapper = new ObjectMapper()
-        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-  
+    private final CosmosPartitioning partitioning;
+    private final Mono<CosmosContainer> legacyCollection;
+
     CosmosDocumentProvider(CosmosSettings cosmosSettings) {
+        this(cosmosSettings, CosmosPartitioning.ID, false);
+    }
+
+    /**
+     * Constructor for CosmosDocumentProvider
+     *
+     * @param cosmosSettings - the Cosmos account's host and key
+     * @param partitioning   - which container the books are kept in
+     * @param dualRead       - true while {@link CosmosMigration} moves the books into the AUTHOR container: reads
+     *                       then merge in the books still in the ID container, and deletes remove books from both
+     */
+    CosmosDocumentProvider(CosmosSettings cosmosSettings, CosmosPartitioning partitioning, boolean dualRead) {
+        this(client(cosmosSettings), partitioning, dualRead);
+    }
+
+    private CosmosDocumentProvider(CosmosClient cosmosClient, CosmosPartitioning partitioning, boolean dualRead) {
+        this(cosmosClient, container(cosmosClient, partitioning), partitioning,
+            dualRead && partitioning != CosmosPartitioning.ID ? container(cosmosClient, CosmosPartitioning.ID) : null);
+    }
+
+    /**
+     * Constructor for CosmosDocumentProvider over containers that are already set up.
+     *
+     * @param cosmosClient     - the client the containers belong to
+     * @param bookCollection   - the container the books are kept in
+     * @param partitioning     - how that container is partitioned
+     * @param legacyCollection - the ID container while reads are dual, or null
+     */
+    CosmosDocumentProvider(CosmosClient cosmosClient, Mono<CosmosContainer> bookCollection,
+                           CosmosPartitioning partitioning, Mono<CosmosContainer> legacyCollection) {
+        this.cosmosClient = cosmosClient;
+        this.bookCollection = bookCollection;
+        this.partitioning = partitioning;
+        this.legacyCollection = legacyCollection;
+    }
+
+    /**
+     * Builds a client for the Cosmos account.
+     *
+     * @param cosmosSettings - the Cosmos account's host and key
+     * @return CosmosClient using direct connections
+     */
+    static CosmosClient client(CosmosSettings cosmosSettings) {
         ConnectionPolicy policy = new ConnectionPolicy();
         policy.connectionMode(ConnectionMode.DIRECT);
-        cosmosClient = CosmosClient.builder()
+        return CosmosClient.builder()
             .endpoint(cosmosSettings.host())
             .key(cosmosSettings.key())
             .connectionPolicy(policy)
             .build();
-        String databaseId = "book-inventory";
-        String collectionId = "book-info";
-        bookCollection = cosmosClient.createDatabaseIfNotExists(databaseId)
+    }
+
+    /**
+     * Returns the books container with the given partitioning, creating the database and container if they don't
+     * exist yet. A container created before the queries were ordered gets the composite index they need.
+     *
+     * @param client       - the Cosmos client
+     * @param partitioning - which container to open
+     * @return {@link Mono} of the container, cached after the first subscription
+     */
+    static Mono<CosmosContainer> container(CosmosClient client, CosmosPartitioning partitioning) {
+        return client.createDatabaseIfNotExists(DATABASE_ID)
             .flatMap(response -> {
                 final CosmosDatabase database = response.database();
-                final CosmosContainerProperties properties = new CosmosContainerProperties(collectionId, "/id");
-                return database.createContainerIfNotExists(properties).map(CosmosContainerResponse::container);
-            }).cache();
+                final CosmosContainerProperties properties = new CosmosContainerProperties(
+                    partitioning.containerName(), partitioning.partitionKeyPath());
+                properties.indexingPolicy(CosmosQuery.indexingPolicy());
+                return database.createContainerIfNotExists(properties);
+            })
+            .flatMap(CosmosDocumentProvider::withOrderIndex)
+            .cache();
+    }
+
+    /**
+     * Replaces the indexing policy of an existing container that lacks the composite index for the ordered queries.
+     * Cosmos builds the index in the background; ordered queries work again once it's done.
+     *
+     * @param response - the container as it was created or read
+     * @return {@link Mono} of the container
+     */
+    private static Mono<CosmosContainer> withOrderIndex(CosmosContainerResponse response) {
+        CosmosContainerProperties properties = response.properties();
+        if (CosmosQuery.hasOrderIndex(properties.indexingPolicy())) {
+            return Mono.just(response.container());
+        }
+        logger.info("Adding the composite index for ordered queries to container " + properties.id() + ".");
+        properties.indexingPolicy(CosmosQuery.withOrderIndex(properties.indexingPolicy()));
+        return response.container().replace(properties).map(CosmosContainerResponse::container);
     }
 
     /**
@@ -65,18 +143,148 @@ final class CosmosDocumentProvider implements DocumentProvider {
      */
     @Override
     public Flux<Book> getBooks() {
-        Flux<Book> cosmosBooks = bookCollection.flatMapMany(items -> {
-            Flux<FeedResponse<CosmosItemProperties>> containerItems = items.queryItems("SELECT * FROM all",
-                new FeedOptions().enableCrossPartitionQuery(true));
-            return queryBooks(containerItems);
-        });
-        return cosmosBooks.sort(Comparator.comparing((Book obj) -> obj.getAuthor().getLastName())
-            .thenComparing(obj -> obj.getAuthor().getFirstName())
-            .thenComparing(Book::getTitle));
+        return queryOrdered(CosmosQuery.ALL, null);
+    }
+
+    /**
+     * Runs a query that's ordered by author and title. While reads are dual the query also runs on the ID container
+     * and the two ordered results are merged, so a book that's in both because it's being moved comes back once.
+     *
+     * @param query  - the query to run
+     * @param author - the author the query is limited to, so it can read one partition, or null
+     * @param values - the values of the query's parameters
+     * @return Flux of the books, ordered by author and title
+     */
+    private Flux<Book> queryOrdered(CosmosQuery query, Author author, Object... values) {
+        Flux<Book> books = bookCollection.flatMapMany(items -> queryBooks(query.run(items,
+            options(partitioning, author), values)));
+        if (legacyCollection == null) {
+            return books;
+        }
+        Flux<Book> legacy = legacyCollection.flatMapMany(items -> queryBooks(query.run(items,
+            options(CosmosPartitioning.ID, author), values)));
+        return Flux.mergeOrdered(BookPage.ORDER, books, legacy).distinctUntilChanged(BookPage::sortKey);
+    }
+
+    private static FeedOptions options(CosmosPartitioning partitioning, Author author) {
+        return author == null ? new FeedOptions().enableCrossPartitionQuery(true) : partitioning.options(author);
+    }
+
+    /**
+     * Returns one page of books, resuming the ordered query from the continuation token Cosmos returned with the
+     * previous page. A page may hold fewer books than asked for even when more follow. While reads are dual there's
+     * no single continuation token, so the merged books are paged by key instead.
+     *
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    @Override
+    public Mono<BookPage> getBooks(int pageSize, String continuationKey) {
+        if (legacyCollection != null) {
+            return DocumentProvider.page(getBooks(), pageSize, continuationKey);
+        }
+        return queryPage(CosmosQuery.ALL, null, pageSize, continuationKey);
+    }
+
+    /**
+     * Returns one page of the books by the author, resuming from the continuation token Cosmos returned.
+     *
+     * @param author          - Contains the name of the author the user is looking for
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    @Override
+    public Mono<BookPage> findBook(Author author, int pageSize, String continuationKey) {
+        if (legacyCollection != null) {
+            return DocumentProvider.page(findBook(author), pageSize, continuationKey);
+        }
+        return queryPage(CosmosQuery.BY_AUTHOR, author, pageSize, continuationKey, author.getLastName(),
+            author.getFirstName());
+    }
+
+    /**
+     * Returns one page of the books whose authors' last names fall in the range, using the same ordered query as
+     * the other pages.
+     *
+     * @param fromLastName    - the first last name in the range
+     * @param toLastName      - the last name, or last name prefix, that ends the range
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    @Override
+    public Mono<BookPage> findBooks(String fromLastName, String toLastName, int pageSize, String continuationKey) {
+        if (legacyCollection != null) {
+            return DocumentProvider.page(queryOrdered(CosmosQuery.AUTHOR_RANGE, null, fromLastName, toLastName),
+                pageSize, continuationKey);
+        }
+        return queryPage(CosmosQuery.AUTHOR_RANGE, null, pageSize, continuationKey, fromLastName, toLastName);
     }
 
     /**
-     * Saves the book as a JSON file
+     * Returns one page of books in id order with a keyset query: the books whose ids come after the last id of the
+     * previous page. The id is always indexed, so each page is one query. Cosmos ids are derived from the author and
+     * title by {@link #documentId} rather than made by {@link IdGenerator#ULID}, so the order has nothing to do with
+     * when a book was saved: a book saved while paging shows up only if its id sorts after the current key. Books
+     * that were there when paging started are still each returned once.
+     *
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    @Override
+    public Mono<BookPage> getBooksById(int pageSize, String continuationKey) {
+        if (legacyCollection != null) {
+            return DocumentProvider.page(getBooks().filter(book -> book.id() != null), Book::id, pageSize,
+                continuationKey);
+        }
+        if (pageSize <= 0) {
+            return Mono.error(new IllegalArgumentException("Page size must be positive."));
+        }
+        String after;
+        try {
+            after = continuationKey == null ? null : BookPage.decodeKey(continuationKey);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+        FeedOptions options = new FeedOptions().enableCrossPartitionQuery(true).maxItemCount(pageSize);
+        return bookCollection.flatMapMany(items -> queryBooks(after == null
+            ? CosmosQuery.ALL_BY_ID.run(items, options, pageSize)
+            : CosmosQuery.AFTER_ID.run(items, options, pageSize, after)))
+            .collectList()
+            .map(books -> books.size() < pageSize ? new BookPage(books, null)
+                : new BookPage(books, BookPage.encodeKey(books.get(books.size() - 1).id())));
+    }
+
+    /**
+     * Runs the query, which is ordered by author and title, and returns its next page.
+     *
+     * @param query           - the query to run
+     * @param author          - the author the query is limited to, so it can read one partition, or null
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the Cosmos continuation token, or null for the first page
+     * @param values          - the values of the query's parameters
+     * @return {@link Mono} of the page
+     */
+    private Mono<BookPage> queryPage(CosmosQuery query, Author author, int pageSize, String continuationKey,
+                                     Object... values) {
+        if (pageSize <= 0) {
+            return Mono.error(new IllegalArgumentException("Page size must be positive."));
+        }
+        FeedOptions options = options(partitioning, author).maxItemCount(pageSize)
+            .requestContinuation(continuationKey);
+        return bookCollection.flatMap(items -> query.run(items, options, values).next())
+            .flatMap(response -> queryBooks(Flux.just(response)).collectList()
+                .map(books -> new BookPage(books, response.continuationToken())))
+            .defaultIfEmpty(new BookPage(Collections.emptyList(), null));
+    }
+
+    /**
+     * Saves the book as a JSON file with a single upsert under its derived id. A copy saved before ids were derived
+     * keeps its random id until {@link CosmosMigration} runs. While reads are dual, the book's copy in the ID
+     * container is deleted once it's saved, so reads don't merge the old copy back in.
      *
      * @param title  - String containing the title of the book
      * @param author - Author object of the book
@@ -102,19 +310,48 @@ final class CosmosDocumentProvider implements DocumentProvider {
         File relativeFile = Paths.get(IMAGE_PATH, author.getLastName(), author.getFirstName(), titleImage).toFile();
         URI saved = relativeFile.toURI();
         URI relative = new File(System.getProperty("user.dir")).toURI().relativize(saved);
-        Book book = new Book(title, author, relative);
-        return duplicateImages(book).then(bookCollection.flatMap(collection ->
-            collection.createItem(book).then()
-        ));
+        Book book = new Book(title, author, relative, documentId(title, author));
+        CosmosItemProperties item;
+        try {
+            item = new CosmosItemProperties(new String(BookCodec.JSON.encode(book), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.error("Error encoding book: ", e);
+            return Mono.error(e);
+        }
+        CosmosItemRequestOptions options = new CosmosItemRequestOptions()
+            .partitionKey(new PartitionKey(partitioning.partitionKey(book)));
+        Mono<Void> upsert = bookCollection.flatMap(collection -> collection.upsertItem(item, options)).then();
+        if (legacyCollection == null) {
+            return upsert;
+        }
+        return upsert.then(deleteFrom(legacyCollection, CosmosPartitioning.ID, book)).then();
     }
 
     /**
-     * Tries to delete the book if there's another copy.
+     * Returns the id of the item that holds the book with the given title and author. The id is a name-based UUID
+     * of the author's {@link Author#normalizeName normalized names} and the normalized title, so saving a book again
+     * replaces its item instead of adding another, and a book can be read or deleted by id without a query. Books
+     * saved before ids were derived keep their random ids until {@link CosmosMigration} gives them these.
      *
-     * @param b - Book object that may have a potential duplicate
+     * @param title  - the book's title
+     * @param author - the book's author
+     * @return the item's id
      */
-    private Mono<Void> duplicateImages(Book b) {
-        return deleteBook(b).onErrorResume(error -> Mono.empty());
+    static String documentId(String title, Author author) {
+        // Normalizing turns every run of whitespace into a space, so the line breaks keep the parts apart.
+        String key = Author.normalizeName(author.getLastName()) + "\n" + Author.normalizeName(author.getFirstName())
+            + "\n" + TitleIndex.normalize(title);
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Returns whether a Cosmos request failed because the item wasn't there.
+     *
+     * @param error - the error the request ended with
+     * @return true for a 404 from Cosmos
+     */
+    static boolean isNotFound(Throwable error) {
+        return error instanceof CosmosClientException && ((CosmosClientException) error).statusCode() == NOT_FOUND;
     }
 
     /**
@@ -127,12 +364,17 @@ final class CosmosDocumentProvider implements DocumentProvider {
      */
     @Override
     public Mono<Void> editBook(Book oldBook, Book newBook, boolean saveCover) {
-        return deleteBook(oldBook).then(saveBook(newBook.getTitle(), newBook.getAuthor(),
-            newBook.getCover()));
+        Mono<Void> save = saveBook(newBook.getTitle(), newBook.getAuthor(), newBook.getCover());
+        // Saving the book under the same id replaces the old item, so there's nothing to delete first.
+        if (documentId(newBook.getTitle(), newBook.getAuthor()).equals(oldBook.id())) {
+            return save;
+        }
+        return deleteBook(oldBook).then(save);
     }
 
     /**
-     * Deletes the book and the file based off its information.
+     * Deletes the book and the file based off its information. While reads are dual the book is deleted from the ID
+     * container too, so a book that hasn't been moved yet, or is being moved, doesn't come back.
      *
      * @param book - Book that'll be deleted
      * @return Mono<Boolean> determines whether or not book was successfully deleted </Boolean>
@@ -141,25 +383,63 @@ final class CosmosDocumentProvider implements DocumentProvider {
      */
     @Override
     public Mono<Void> deleteBook(Book book) {
-        String title = book.getTitle();
+        Mono<Boolean> deleted = deleteFrom(bookCollection, partitioning, book);
+        if (legacyCollection != null) {
+            deleted = Mono.zip(deleted, deleteFrom(legacyCollection, CosmosPartitioning.ID, book),
+                (current, legacy) -> current || legacy);
+        }
+        return deleted.flatMap(found -> found ? Mono.<Void>empty()
+            : Mono.error(new IllegalArgumentException("Should have at least one book.")));
+    }
+
+    /**
+     * Deletes the book with the same title and author from the container by its id. If there's no item with that
+     * id, the book may have been saved before ids were derived, so it's looked up with a query instead.
+     *
+     * @param collection   - the container to delete from
+     * @param partitioning - how that container is partitioned
+     * @param book         - Book that'll be deleted
+     * @return {@link Mono} of true if a book was deleted, false if the container had none
+     */
+    private Mono<Boolean> deleteFrom(Mono<CosmosContainer> collection, CosmosPartitioning partitioning, Book book) {
         Author author = book.getAuthor();
-        return bookCollection.flatMap(items -> {
-            Flux<FeedResponse<CosmosItemProperties>> containerItems = items.queryItems("SELECT * FROM Book b WHERE b.title = \""
-                    + title + "\" AND b.author.lastName =\"" + author.getLastName() + "\" AND b.author.firstName = \"" + author.getFirstName() + "\"",
-                new FeedOptions().enableCrossPartitionQuery(true));
-            return containerItems.single().map(response -> response.results()).flatMap(results -> {
-                if (results.isEmpty()) {
-                    throw Exceptions.propagate(new IllegalArgumentException("Should have at least one book."));
-                }
-                CosmosItemProperties properties = results.get(0);
-                try {
-                    Book theBook = mapper.readValue(properties.toJson(), Book.class);
-                    return bookCollection.flatMap(container -> container.getItem(theBook.id(), theBook.id()).delete());
-                } catch (IOException e) {
-                    throw Exceptions.propagate(e);
-                }
-            });
-        }).then();
+        String id = documentId(book.getTitle(), author);
+        return collection.flatMap(items -> items.getItem(id, partitioning.partitionKey(id, author)).delete()
+            .thenReturn(true)
+            .onErrorResume(CosmosDocumentProvider::isNotFound, missing -> queryBooks(CosmosQuery.BY_TITLE_AND_AUTHOR
+                .run(items, partitioning.options(author), book.getTitle(), author.getLastName(),
+                    author.getFirstName()))
+                .next()
+                .flatMap(found -> items.getItem(found.id(), partitioning.partitionKey(found)).delete()
+                    .thenReturn(true))
+                .defaultIfEmpty(false)));
+    }
+
+    /**
+     * Reads the book with the given title and author by its id, from the container and, while reads are dual, from
+     * the ID container. A book that was saved before ids were derived is looked up with a query instead.
+     *
+     * @param title  - the book's title
+     * @param author - the book's author
+     * @return {@link Mono} of the book, or empty if there's none
+     */
+    @Override
+    public Mono<Book> findBook(String title, Author author) {
+        Mono<Book> book = readFrom(bookCollection, partitioning, title, author);
+        if (legacyCollection != null) {
+            book = book.switchIfEmpty(readFrom(legacyCollection, CosmosPartitioning.ID, title, author));
+        }
+        return book;
+    }
+
+    private Mono<Book> readFrom(Mono<CosmosContainer> collection, CosmosPartitioning partitioning, String title,
+                                Author author) {
+        String id = documentId(title, author);
+        return collection.flatMap(items -> items.getItem(id, partitioning.partitionKey(id, author)).read()
+            .map(response -> decode(response.properties()))
+            .onErrorResume(CosmosDocumentProvider::isNotFound, missing -> queryBooks(CosmosQuery.BY_TITLE_AND_AUTHOR
+                .run(items, partitioning.options(author), title, author.getLastName(), author.getFirstName()))
+                .next()));
     }
 
     /**
@@ -170,14 +450,28 @@ final class CosmosDocumentProvider implements DocumentProvider {
      */
     @Override
     public Flux<Book> findBook(String title) {
-        Flux<Book> cosmosBooks = bookCollection.flatMapMany(items -> {
-            Flux<FeedResponse<CosmosItemProperties>> containerItems = items.queryItems("SELECT * FROM Book b WHERE b.title = \""
-                + title + "\"", new FeedOptions().enableCrossPartitionQuery(true));
-            return queryBooks(containerItems);
-        });
-        return cosmosBooks.sort(Comparator.comparing((Book obj) -> obj.getAuthor().getLastName())
-            .thenComparing(obj -> obj.getAuthor().getFirstName())
-            .thenComparing(Book::getTitle));
+        return queryOrdered(CosmosQuery.BY_TITLE, null, title);
+    }
+
+    /**
+     * Finds books whose titles start with the query, ignoring case. Cosmos has no typo-tolerant match, so unlike the
+     * local provider this only does prefix matching.
+     *
+     * @param query - what the user has typed so far
+     * @param limit - the most books to return
+     * @return Flux of the matching books
+     */
+    @Override
+    public Flux<Book> searchTitles(String query, int limit) {
+        String prefix = query.trim().toLowerCase(Locale.ROOT);
+        Flux<Book> books = bookCollection.flatMapMany(items -> queryBooks(CosmosQuery.TITLE_PREFIX.run(items,
+            new FeedOptions().enableCrossPartitionQuery(true), limit, prefix)));
+        if (legacyCollection == null) {
+            return books;
+        }
+        Flux<Book> legacy = legacyCollection.flatMapMany(items -> queryBooks(CosmosQuery.TITLE_PREFIX.run(items,
+            new FeedOptions().enableCrossPartitionQuery(true), limit, prefix)));
+        return Flux.concat(books, legacy).distinct(Book::id).take(limit);
     }
 
     /**
@@ -188,37 +482,33 @@ final class CosmosDocumentProvider implements DocumentProvider {
      */
     @Override
     public Flux<Book> findBook(Author author) {
-        Flux<Book> cosmosBooks = bookCollection.flatMapMany(items -> {
-            Flux<FeedResponse<CosmosItemProperties>> containerItems = items.queryItems("SELECT * FROM Book b WHERE b.author.lastName =\""
-                + author.getLastName() + "\" AND b.author.firstName = \"" + author.getFirstName() + "\"", new FeedOptions().enableCrossPartitionQuery(true));
-            return queryBooks(containerItems);
-        });
-        return cosmosBooks.sort(Comparator.comparing((Book obj) -> obj.getAuthor().getLastName())
-            .thenComparing(obj -> obj.getAuthor().getFirstName())
-            .thenComparing(Book::getTitle));
+        return queryOrdered(CosmosQuery.BY_AUTHOR, author, author.getLastName(), author.getFirstName());
     }
 
     /**
-     * Converts the items in the Cosmos container into Book objects
+     * Converts the items in the Cosmos container into Book objects, keeping the order of the query
      *
      * @param containerItems - the query with the Cosmos items under a specific criteria
      * @return Flux of Book with the specific books
      */
     private Flux<Book> queryBooks(Flux<FeedResponse<CosmosItemProperties>> containerItems) {
-        return containerItems.flatMap(item -> {
+        return containerItems.concatMap(item -> {
             List<CosmosItemProperties> list = item.results();
-            return Flux.fromIterable(list).map(book -> {
-                try {
-                    return book.getObject(Book.class);
-                } catch (IOException e) {
-                    logger.error("Failed to de-serialize: ", e);
-                    throw Exceptions.propagate(e);
-                }
-            });
+            return Flux.fromIterable(list).map(CosmosDocumentProvider::decode);
         });
     }
 
+    private static Book decode(CosmosItemProperties item) {
+        try {
+            return BookCodec.JSON.decode(item.toJson());
+        } catch (IOException e) {
+            logger.error("Failed to de-serialize: ", e);
+            throw Exceptions.propagate(e);
+        }
+    }
+
     void closeStorage() {
+        logger.info(CosmosQuery.report());
         cosmosClient.close();
     }
 }
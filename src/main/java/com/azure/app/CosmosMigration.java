@@ -0,0 +1,173 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.azure.data.cosmos.AccessCondition;
+import com.azure.data.cosmos.AccessConditionType;
+import com.azure.data.cosmos.CosmosClient;
+import com.azure.data.cosmos.CosmosClientException;
+import com.azure.data.cosmos.CosmosContainer;
+import com.azure.data.cosmos.CosmosItemProperties;
+import com.azure.data.cosmos.CosmosItemRequestOptions;
+import com.azure.data.cosmos.FeedOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.azure.app.Constants.BULK_BATCH_SIZE;
+import static com.azure.app.Constants.BULK_CONCURRENCY;
+
+/**
+ * Moves the books from the container partitioned by id to the one partitioned by author, while the application
+ * keeps using them: java -cp ... com.azure.app.CosmosMigration [from] [to], where both are id or author and default to
+ * id and author.
+ *
+ * <p>Set COSMOS_PARTITIONING to author and COSMOS_DUAL_READ to true before starting it. The application then saves new
+ * books to the author container, reads from both containers and deletes books, including the id container's copy of a
+ * book it saves, from both. The books are streamed from the id container a page at a time and moved BULK_CONCURRENCY at
+ * once: each is created in the author container under its {@link CosmosDocumentProvider#documentId} and then deleted
+ * from the id container, so a book is never missing from both. If the author container already has the book under that
+ * id, it was saved again since, and that copy is kept. If the delete finds the book already gone, the user deleted it
+ * after it was read here, and the copy just created is deleted too, unless it has changed since, so the book doesn't
+ * come back. Running the tool again picks up the books that are still in the id container; once it moves none,
+ * COSMOS_DUAL_READ can be turned off.</p>
+ *
+ * <p>Given the same container twice, the tool instead gives the books in it that were saved before ids were derived
+ * their derived ids, so they can be read and deleted by id. That needs no dual reads, and is how a book saved again
+ * over a copy with a random id stops being listed twice.</p>
+ */
+final class CosmosMigration {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CosmosMigration.class);
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final CosmosPartitioning from;
+    private final CosmosPartitioning to;
+    private final Mono<CosmosContainer> source;
+    private final Mono<CosmosContainer> target;
+
+    /**
+     * Constructor for CosmosMigration
+     *
+     * @param client - the Cosmos client for the account holding both containers
+     * @param from   - the container the books are moved from
+     * @param to     - the container the books are moved to, or the same one to only derive their ids
+     */
+    CosmosMigration(CosmosClient client, CosmosPartitioning from, CosmosPartitioning to) {
+        this.from = from;
+        this.to = to;
+        this.source = CosmosDocumentProvider.container(client, from);
+        this.target = from == to ? source : CosmosDocumentProvider.container(client, to);
+    }
+
+    public static void main(String[] args) {
+        CosmosPartitioning from;
+        CosmosPartitioning to;
+        try {
+            from = CosmosPartitioning.valueOf((args.length > 0 ? args[0] : "id").toUpperCase(Locale.ROOT));
+            to = CosmosPartitioning.valueOf((args.length > 1 ? args[1] : "author").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("The containers are id or author.");
+            return;
+        }
+        CosmosSettings cosmosSettings = new KeyVaultStorage().getCosmosInformation().block();
+        if (cosmosSettings == null) {
+            LOGGER.error("Couldn't read the Cosmos settings.");
+            return;
+        }
+        CosmosClient client = CosmosDocumentProvider.client(cosmosSettings);
+        try {
+            Long moved = new CosmosMigration(client, from, to).migrate().block();
+            System.out.println("Moved " + moved + " books to " + to.containerName() + ".");
+        } catch (RuntimeException e) {
+            LOGGER.error("Migration stopped, run it again to continue: ", Exceptions.unwrap(e));
+        } finally {
+            LOGGER.info(CosmosQuery.report());
+            client.close();
+        }
+    }
+
+    /**
+     * Moves every book that's still in the container partitioned by id.
+     *
+     * @return {@link Mono} of the number of books that were moved
+     */
+    Mono<Long> migrate() {
+        AtomicLong moved = new AtomicLong();
+        return Mono.zip(source, target).flatMap(containers -> containers.getT1()
+            .readAllItems(new FeedOptions().enableCrossPartitionQuery(true).maxItemCount(BULK_BATCH_SIZE))
+            .concatMapIterable(response -> response.results())
+            .flatMap(item -> move(containers.getT1(), containers.getT2(), item), BULK_CONCURRENCY)
+            .filter(Boolean::booleanValue)
+            .doOnNext(done -> {
+                long count = moved.incrementAndGet();
+                if (count % BULK_BATCH_SIZE == 0) {
+                    LOGGER.info("Moved " + count + " books to " + to.containerName() + ".");
+                }
+            })
+            .count());
+    }
+
+    /**
+     * Moves one book: creates it in the target under its derived id, then deletes it from the source. Items that
+     * can't be read as books, and books that already have their derived id when the source is the target, are left
+     * where they are.
+     *
+     * @param source - the container the book is moved from
+     * @param target - the container the book is moved to
+     * @param item   - the book's item in the source
+     * @return {@link Mono} of true if the book was moved, false if it was left or deleted meanwhile
+     */
+    private Mono<Boolean> move(CosmosContainer source, CosmosContainer target, CosmosItemProperties item) {
+        Book book;
+        Book keyed;
+        CosmosItemProperties copy;
+        try {
+            book = BookCodec.JSON.decode(item.toJson());
+            if (book.id() == null || !book.isValid()) {
+                LOGGER.warn("Leaving an item that isn't a book in place: " + item.id());
+                return Mono.just(false);
+            }
+            keyed = new Book(book.getTitle(), book.getAuthor(), book.getCover(),
+                CosmosDocumentProvider.documentId(book.getTitle(), book.getAuthor()));
+            // Encoding the book again leaves out the fields Cosmos added to the item in the source.
+            copy = new CosmosItemProperties(new String(BookCodec.JSON.encode(keyed), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.warn("Leaving an item that isn't a book in place: " + item.id(), e);
+            return Mono.just(false);
+        }
+        if (from == to && keyed.id().equals(book.id())) {
+            return Mono.just(false);
+        }
+        Object partitionKey = to.partitionKey(keyed);
+        Mono<Optional<String>> created = target.createItem(copy, new CosmosItemRequestOptions(partitionKey))
+            .map(response -> Optional.of(response.properties().etag()))
+            .onErrorResume(CosmosMigration::isConflict, saved -> Mono.just(Optional.empty()));
+        return created.flatMap(etag -> source.getItem(book.id(), from.partitionKey(book)).delete()
+            .thenReturn(true)
+            .onErrorResume(CosmosDocumentProvider::isNotFound, deleted -> etag.map(tag -> target.getItem(keyed.id(),
+                partitionKey).delete(new CosmosItemRequestOptions(partitionKey).accessCondition(new AccessCondition()
+                .type(AccessConditionType.IF_MATCH).condition(tag))).then())
+                .orElse(Mono.empty())
+                .onErrorResume(error -> CosmosDocumentProvider.isNotFound(error) || isPreconditionFailed(error),
+                    changed -> Mono.empty())
+                .thenReturn(false)));
+    }
+
+    private static boolean isConflict(Throwable error) {
+        return error instanceof CosmosClientException && ((CosmosClientException) error).statusCode() == CONFLICT;
+    }
+
+    private static boolean isPreconditionFailed(Throwable error) {
+        return error instanceof CosmosClientException
+            && ((CosmosClientException) error).statusCode() == PRECONDITION_FAILED;
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.azure.data.cosmos.FeedOptions;
+import com.azure.data.cosmos.PartitionKey;
+
+/**
+ * How the Cosmos container that holds the books is partitioned.
+ *
+ * <p>ID is the original book-info container, partitioned by the book's id: every book is alone in its partition,
+ * so any query that isn't a point read fans out to every partition. AUTHOR is the book-info-by-author container,
+ * partitioned by the author's last name, which is already in every item as author.lastName. All of an author's
+ * books share a partition, so looking up or deleting an author's books reads one partition.
+ * {@link CosmosMigration} moves the books from the ID container to the AUTHOR one.</p>
+ */
+enum CosmosPartitioning {
+    ID("book-info", "/id"),
+    AUTHOR("book-info-by-author", "/author/lastName");
+
+    private final String containerName;
+    private final String partitionKeyPath;
+
+    CosmosPartitioning(String containerName, String partitionKeyPath) {
+        this.containerName = containerName;
+        this.partitionKeyPath = partitionKeyPath;
+    }
+
+    /**
+     * Returns the name of the container partitioned this way.
+     *
+     * @return the container name
+     */
+    String containerName() {
+        return containerName;
+    }
+
+    /**
+     * Returns the path of the partition key in each item.
+     *
+     * @return the partition key path
+     */
+    String partitionKeyPath() {
+        return partitionKeyPath;
+    }
+
+    /**
+     * Returns the partition key value of a stored book, for point reads and deletes.
+     *
+     * @param book - Book read from the container
+     * @return the book's id or its author's last name
+     */
+    Object partitionKey(Book book) {
+        return partitionKey(book.id(), book.getAuthor());
+    }
+
+    /**
+     * Returns the partition key value of the item with the given id and author.
+     *
+     * @param id     - the item's id
+     * @param author - Author of the book in the item
+     * @return the id or the author's last name
+     */
+    Object partitionKey(String id, Author author) {
+        return this == ID ? id : author.getLastName();
+    }
+
+    /**
+     * Returns the feed options for a query that only looks at one author's books: the author's partition when the
+     * container is partitioned by author, every partition otherwise.
+     *
+     * @param author - Author whose books are queried
+     * @return FeedOptions for the query
+     */
+    FeedOptions options(Author author) {
+        return this == AUTHOR ? new FeedOptions().partitionKey(new PartitionKey(author.getLastName()))
+            : new FeedOptions().enableCrossPartitionQuery(true);
+    }
+}
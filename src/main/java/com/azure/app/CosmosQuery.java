@@ -0,0 +1,200 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.azure.data.cosmos.CompositePath;
+import com.azure.data.cosmos.CompositePathSortOrder;
+import com.azure.data.cosmos.CosmosContainer;
+import com.azure.data.cosmos.CosmosItemProperties;
+import com.azure.data.cosmos.FeedOptions;
+import com.azure.data.cosmos.FeedResponse;
+import com.azure.data.cosmos.IncludedPath;
+import com.azure.data.cosmos.IndexingPolicy;
+import com.azure.data.cosmos.SqlParameter;
+import com.azure.data.cosmos.SqlParameterList;
+import com.azure.data.cosmos.SqlQuerySpec;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The queries CosmosDocumentProvider runs, each prepared once as parameterized SQL.
+ *
+ * <p>Values are always passed as parameters, never written into the query text, so a quote in a title can't break
+ * a query and every run of a query type sends Cosmos the same text, which lets it reuse the query plan. The text
+ * and parameter names are built once per query type; each run binds its values into a new SqlQuerySpec, because
+ * the SDK writes into a spec when it serializes it and a spec can't be shared by queries running at once.</p>
+ *
+ * <p>Cosmos only runs an ORDER BY over several fields with a composite index on the same fields in the same order,
+ * so every container the books are kept in is given {@link #indexingPolicy()}.</p>
+ *
+ * <p>Each query type also counts how often it ran, the request units it was charged and how long it took from the
+ * first request to the last page, so the cost of each query type can be compared; see {@link #report()}.</p>
+ */
+enum CosmosQuery {
+    ALL("SELECT * FROM Book b" + CosmosQuery.ORDER_BY),
+    ALL_BY_ID("SELECT TOP @limit * FROM Book b ORDER BY b.id", "@limit"),
+    AFTER_ID("SELECT TOP @limit * FROM Book b WHERE b.id > @id ORDER BY b.id", "@limit", "@id"),
+    BY_TITLE("SELECT * FROM Book b WHERE b.title = @title" + CosmosQuery.ORDER_BY, "@title"),
+    BY_TITLE_AND_AUTHOR("SELECT * FROM Book b WHERE b.title = @title AND b.author.lastName = @lastName"
+        + " AND b.author.firstName = @firstName", "@title", "@lastName", "@firstName"),
+    BY_AUTHOR("SELECT * FROM Book b WHERE b.author.lastName = @lastName AND b.author.firstName = @firstName"
+        + CosmosQuery.ORDER_BY, "@lastName", "@firstName"),
+    AUTHOR_RANGE("SELECT * FROM Book b WHERE b.author.lastName >= @from AND (b.author.lastName <= @to"
+        + " OR STARTSWITH(b.author.lastName, @to))" + CosmosQuery.ORDER_BY, "@from", "@to"),
+    TITLE_PREFIX("SELECT TOP @limit * FROM Book b WHERE STARTSWITH(LOWER(b.title), @prefix)", "@limit", "@prefix");
+
+    private static final String ORDER_BY = " ORDER BY b.author.lastName, b.author.firstName, b.title";
+    private static final String INCLUDE_ALL = "/*";
+    private static final String COMPOSITE_INDEXES = "compositeIndexes";
+    static final List<String> ORDER_PATHS = Collections.unmodifiableList(Arrays.asList("/author/lastName",
+        "/author/firstName", "/title"));
+
+    private final String text;
+    private final String[] parameters;
+    private final LongAdder runs = new LongAdder();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    CosmosQuery(String text, String... parameters) {
+        this.text = text;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Binds the values to the query's parameters.
+     *
+     * @param values - one value for each parameter, in the order they're declared
+     * @return a new SqlQuerySpec holding the prepared text and the values
+     * @throws IllegalArgumentException if the number of values doesn't match the parameters
+     */
+    SqlQuerySpec spec(Object... values) {
+        if (values.length != parameters.length) {
+            throw new IllegalArgumentException(name() + " takes " + parameters.length + " values, not "
+                + values.length + ".");
+        }
+        SqlParameterList list = new SqlParameterList();
+        for (int i = 0; i < values.length; i++) {
+            list.add(new SqlParameter(parameters[i], values[i]));
+        }
+        return new SqlQuerySpec(text, list);
+    }
+
+    /**
+     * Runs the query against the container and records its cost.
+     *
+     * @param container - the container to query
+     * @param options   - the feed options for the query
+     * @param values    - one value for each parameter
+     * @return Flux of the query's pages
+     */
+    Flux<FeedResponse<CosmosItemProperties>> run(CosmosContainer container, FeedOptions options, Object... values) {
+        SqlQuerySpec spec = spec(values);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return container.queryItems(spec, options)
+                .doOnNext(response -> requestCharge.add(response.requestCharge()))
+                .doFinally(signal -> {
+                    runs.increment();
+                    nanos.add(System.nanoTime() - start);
+                });
+        });
+    }
+
+    /**
+     * Returns the query text sent to Cosmos.
+     *
+     * @return the parameterized SQL
+     */
+    String text() {
+        return text;
+    }
+
+    /**
+     * Returns the indexing policy for a books container: every path indexed as by default, plus the composite index
+     * the ordered queries need.
+     *
+     * @return a new IndexingPolicy
+     */
+    static IndexingPolicy indexingPolicy() {
+        IndexingPolicy policy = new IndexingPolicy();
+        policy.setIncludedPaths(Collections.singletonList(new IncludedPath().path(INCLUDE_ALL)));
+        return withOrderIndex(policy);
+    }
+
+    /**
+     * Adds the composite index the ordered queries need to a container's policy, keeping its other indexes.
+     *
+     * @param policy - the container's current policy
+     * @return the same policy, with the composite index added if it was missing
+     */
+    static IndexingPolicy withOrderIndex(IndexingPolicy policy) {
+        if (hasOrderIndex(policy)) {
+            return policy;
+        }
+        List<List<CompositePath>> composites = new ArrayList<>(compositeIndexes(policy));
+        composites.add(orderIndex());
+        return policy.compositeIndexes(composites);
+    }
+
+    /**
+     * Returns whether a container's policy already has the composite index the ordered queries need.
+     *
+     * @param policy - the container's policy
+     * @return true if one of its composite indexes is on the ORDER BY fields, in order and ascending
+     */
+    static boolean hasOrderIndex(IndexingPolicy policy) {
+        for (List<CompositePath> composite : compositeIndexes(policy)) {
+            if (composite.size() != ORDER_PATHS.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < composite.size() && matches; i++) {
+                CompositePath path = composite.get(i);
+                matches = ORDER_PATHS.get(i).equals(path.path())
+                    && path.order() == CompositePathSortOrder.ASCENDING;
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<List<CompositePath>> compositeIndexes(IndexingPolicy policy) {
+        // The SDK's getter fails on a policy that has never had a composite index.
+        return policy.has(COMPOSITE_INDEXES) ? policy.compositeIndexes() : Collections.emptyList();
+    }
+
+    private static List<CompositePath> orderIndex() {
+        List<CompositePath> index = new ArrayList<>();
+        for (String path : ORDER_PATHS) {
+            index.add(new CompositePath().path(path).order(CompositePathSortOrder.ASCENDING));
+        }
+        return index;
+    }
+
+    /**
+     * Describes the cost of every query type that has run, for the logs.
+     *
+     * @return one line per query type with its runs, average request units and average latency
+     */
+    static String report() {
+        StringBuilder report = new StringBuilder("Cosmos query costs:");
+        for (CosmosQuery query : values()) {
+            long count = query.runs.sum();
+            if (count > 0) {
+                report.append(String.format("%n  %s: %d runs, %.2f RU and %d ms on average", query.name(), count,
+                    query.requestCharge.sum() / count, TimeUnit.NANOSECONDS.toMillis(query.nanos.sum() / count)));
+            }
+        }
+        return report.toString();
+    }
+}
@@ -7,6 +7,10 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import static com.azure.app.Constants.BULK_CONCURRENCY;
 
 interface DocumentProvider {
     /**
@@ -16,6 +20,33 @@ interface DocumentProvider {
      */
     Flux<Book> getBooks();
 
+    /**
+     * Returns one page of books, sorted by author and title.
+     * This default sorts the whole catalog for every page; providers that keep their books sorted override it.
+     *
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    default Mono<BookPage> getBooks(int pageSize, String continuationKey) {
+        return page(getBooks(), pageSize, continuationKey);
+    }
+
+    /**
+     * Returns one page of books in id order. Ids made by {@link IdGenerator#ULID} sort by when the book was made, so
+     * this pages from the oldest book to the newest; books with ids from another generator are still each returned
+     * once, in id order, as are Cosmos books, whose ids are derived from their author and title. The continuation
+     * key holds the last id returned, so it stays valid however long it's kept.
+     * This default sorts the whole catalog for every page; providers that can query by id override it.
+     *
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    default Mono<BookPage> getBooksById(int pageSize, String continuationKey) {
+        return page(getBooks().filter(book -> book.id() != null), Book::id, pageSize, continuationKey);
+    }
+
     /**
      * Saves the book as a JSON file
      *
@@ -28,6 +59,20 @@ interface DocumentProvider {
      */
     Mono<Void> saveBook(String title, Author author, URI path);
 
+    /**
+     * Saves many books, with at most BULK_CONCURRENCY saves in flight. Books are requested from the Flux only as
+     * results are consumed.
+     *
+     * @param books - Flux of the Book objects to save
+     * @return Flux of one SaveResult per book, in the same order
+     */
+    default Flux<SaveResult> saveBooks(Flux<Book> books) {
+        return books.flatMapSequential(book -> Mono.defer(() -> saveBook(book.getTitle(), book.getAuthor(),
+            book.getCover()))
+            .thenReturn(SaveResult.success(book))
+            .onErrorResume(error -> Mono.just(SaveResult.failure(book, error))), BULK_CONCURRENCY);
+    }
+
     /**
      * Overwrites the old book with the contents in the new book
      *
@@ -56,6 +101,23 @@ interface DocumentProvider {
      */
     Flux<Book> findBook(String title);
 
+    /**
+     * Finds books for search-as-you-type: titles that start with the query, then titles that start with something a
+     * couple of typos away from it. Case, accents and extra spaces are ignored.
+     * This default builds a TitleIndex over the whole catalog for every search; providers that keep one override it.
+     *
+     * @param query - what the user has typed so far
+     * @param limit - the most books to return
+     * @return Flux of the matching books, best matches first
+     */
+    default Flux<Book> searchTitles(String query, int limit) {
+        return getBooks().collectList().flatMapIterable(books -> {
+            TitleIndex index = new TitleIndex();
+            books.forEach(index::add);
+            return index.search(query, limit);
+        });
+    }
+
     /**
      * Filters out the books based on the specified author.
      *
@@ -63,4 +125,87 @@ interface DocumentProvider {
      * @return - Flux of Book objects by that author
      */
     Flux<Book> findBook(Author author);
+
+    /**
+     * Returns the stored book with the given title and author.
+     * This default filters the books with the title; providers that can look a book up by its key override it.
+     *
+     * @param title  - the book's title
+     * @param author - the book's author
+     * @return {@link Mono} of the book, or empty if there's none
+     */
+    default Mono<Book> findBook(String title, Author author) {
+        return findBook(title)
+            .filter(book -> book.getAuthor().getLastName().contentEquals(author.getLastName())
+                && book.getAuthor().getFirstName().contentEquals(author.getFirstName()))
+            .next();
+    }
+
+    /**
+     * Returns one page of the books by the author, sorted by title.
+     *
+     * @param author          - Contains the name of the author the user is looking for
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    default Mono<BookPage> findBook(Author author, int pageSize, String continuationKey) {
+        return page(findBook(author), pageSize, continuationKey);
+    }
+
+    /**
+     * Returns one page of the books whose authors' last names fall between two names, sorted by author and title.
+     * Both ends are included, and so is every last name that starts with toLastName, so "M" to "N" covers every
+     * name from M through N.
+     * This default sorts the books in the range for every page; providers that keep their books sorted override it.
+     *
+     * @param fromLastName    - the first last name in the range
+     * @param toLastName      - the last name, or last name prefix, that ends the range
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    default Mono<BookPage> findBooks(String fromLastName, String toLastName, int pageSize, String continuationKey) {
+        return page(getBooks().filter(book -> BookPage.inAuthorRange(book.getAuthor(), fromLastName, toLastName)),
+            pageSize, continuationKey);
+    }
+
+    /**
+     * Sorts the books and returns those that come after the continuation key.
+     *
+     * @param books           - the books to page through
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    static Mono<BookPage> page(Flux<Book> books, int pageSize, String continuationKey) {
+        return page(books, BookPage::sortKey, pageSize, continuationKey);
+    }
+
+    /**
+     * Sorts the books by a key and returns those that come after the continuation key.
+     *
+     * @param books           - the books to page through
+     * @param key             - the key the books are sorted by, unique to each book
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    static Mono<BookPage> page(Flux<Book> books, Function<Book, String> key, int pageSize, String continuationKey) {
+        if (pageSize <= 0) {
+            return Mono.error(new IllegalArgumentException("Page size must be positive."));
+        }
+        String after;
+        try {
+            after = continuationKey == null ? null : BookPage.decodeKey(continuationKey);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+        return books.filter(book -> after == null || key.apply(book).compareTo(after) > 0)
+            .sort(Comparator.comparing(key))
+            .take(pageSize + 1)
+            .collectList()
+            .map(list -> list.size() <= pageSize ? new BookPage(list, null) : new BookPage(list.subList(0, pageSize),
+                BookPage.encodeKey(key.apply(list.get(pageSize - 1)))));
+    }
 }
@@ -0,0 +1,144 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * An inverted index over the words in book titles and author names, ranked with BM25.
+ *
+ * <p>Words are normalized the same way as in {@link TitleIndex} and split on anything that isn't a letter or digit.
+ * Each word maps to the books containing it and how often it appears in each, so a search only looks at the books
+ * that contain at least one of its words. Books are keyed by author and title, so adding a book that's already
+ * indexed replaces it.</p>
+ */
+final class FullTextIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Document> documents = new HashMap<>();
+    private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+    private long totalLength;
+
+    private static final class Document {
+        private final Book book;
+        private final Map<String, Integer> frequencies;
+        private final int length;
+
+        private Document(Book book, Map<String, Integer> frequencies, int length) {
+            this.book = book;
+            this.frequencies = frequencies;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Indexes the book, replacing any book with the same title and author.
+     *
+     * @param book - Book that was loaded or saved
+     */
+    synchronized void add(Book book) {
+        String key = BookPage.sortKey(book);
+        remove(key);
+        List<String> words = tokenize(book.getTitle() + " " + book.getAuthor().getFirstName() + " "
+            + book.getAuthor().getLastName());
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String word : words) {
+            frequencies.merge(word, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+            postings.computeIfAbsent(frequency.getKey(), term -> new HashMap<>()).put(key, frequency.getValue());
+        }
+        documents.put(key, new Document(book, frequencies, words.size()));
+        totalLength += words.size();
+    }
+
+    /**
+     * Removes the book with the same title and author.
+     *
+     * @param book - Book that was deleted or overwritten
+     */
+    synchronized void remove(Book book) {
+        remove(BookPage.sortKey(book));
+    }
+
+    private void remove(String key) {
+        Document document = documents.remove(key);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.frequencies.keySet()) {
+            Map<String, Integer> posting = postings.get(term);
+            posting.remove(key);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= document.length;
+    }
+
+    /**
+     * Returns the books that best match the keywords, by BM25 score.
+     *
+     * @param keywords - the words to look for in titles and author names
+     * @param limit    - the most books to return
+     * @return the best matching books, best first
+     */
+    synchronized List<Book> search(String keywords, int limit) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(keywords));
+        if (terms.isEmpty() || limit <= 0 || documents.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int count = documents.size();
+        double averageLength = (double) totalLength / count;
+        Map<String, Double> scores = new HashMap<>();
+        for (String term : terms) {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (count - posting.size() + 0.5) / (posting.size() + 0.5));
+            for (Map.Entry<String, Integer> entry : posting.entrySet()) {
+                int frequency = entry.getValue();
+                int length = documents.get(entry.getKey()).length;
+                double score = idf * frequency * (K1 + 1)
+                    / (frequency + K1 * (1 - B + B * length / averageLength));
+                scores.merge(entry.getKey(), score, Double::sum);
+            }
+        }
+        Comparator<Map.Entry<String, Double>> ranking = Comparator.comparing((Map.Entry<String, Double> e) ->
+            e.getValue()).thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<String, Double>> best = new PriorityQueue<>(ranking);
+        for (Map.Entry<String, Double> score : scores.entrySet()) {
+            best.add(score);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Book> books = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            books.add(documents.get(best.poll().getKey()).book);
+        }
+        Collections.reverse(books);
+        return books;
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : TitleIndex.normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
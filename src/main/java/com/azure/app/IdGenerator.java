@@ -0,0 +1,45 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.util.UUID;
+
+/**
+ * Creates the ids of new books. {@link Book} uses {@link #ULID} unless another generator is set with
+ * {@link Book#useIdGenerator}.
+ */
+interface IdGenerator {
+    /**
+     * Time-ordered ids that sort in the order they were made, without locks or a shared SecureRandom.
+     */
+    IdGenerator ULID = new UlidGenerator();
+
+    /**
+     * Random version 4 UUIDs, as books were given before. Each one takes a number from a shared SecureRandom.
+     */
+    IdGenerator RANDOM_UUID = () -> UUID.randomUUID().toString();
+
+    /**
+     * Returns a new id.
+     *
+     * @return an id no other call has returned
+     */
+    String nextId();
+
+    /**
+     * Returns the generator with the given name.
+     *
+     * @param name - "ulid" or "uuid", in any case
+     * @return the generator
+     * @throws IllegalArgumentException if there's no generator with that name
+     */
+    static IdGenerator forName(String name) {
+        if (name.equalsIgnoreCase("ulid")) {
+            return ULID;
+        } else if (name.equalsIgnoreCase("uuid")) {
+            return RANDOM_UUID;
+        }
+        throw new IllegalArgumentException("Id generator '" + name + "' is not recognized.");
+    }
+}
@@ -3,8 +3,11 @@
 
 package com.azure.app;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import static com.azure.app.Constants.BULK_CONCURRENCY;
+
 interface ImageProvider {
     /**
      * Grab a String containing the absolute path to the book's cover location
@@ -23,6 +26,18 @@ interface ImageProvider {
      */
     Mono<Void> saveImage(Book b);
 
+    /**
+     * Saves the cover images of many books, with at most BULK_CONCURRENCY saves in flight.
+     *
+     * @param books - Flux of the Book objects whose covers are saved
+     * @return Flux of one SaveResult per book, in the same order
+     */
+    default Flux<SaveResult> saveImages(Flux<Book> books) {
+        return books.flatMapSequential(book -> Mono.defer(() -> saveImage(book))
+            .thenReturn(SaveResult.success(book))
+            .onErrorResume(error -> Mono.just(SaveResult.failure(book, error))), BULK_CONCURRENCY);
+    }
+
     /**
      * Overwrites the old image with the new image
      *
@@ -0,0 +1,67 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+
+/**
+ * Encodes books as JSON with one shared ObjectMapper. The mapper builds its serializers once; the ObjectReader and
+ * ObjectWriter instances bound to a type are immutable and safe to use from every thread at once.
+ */
+final class JsonBookCodec implements BookCodec {
+    private final ObjectReader reader = Shared.MAPPER.readerFor(Book.class);
+    private final ObjectWriter writer;
+
+    /**
+     * Holds the shared mapper. It's kept out of JsonBookCodec itself because BookCodec creates a JsonBookCodec while
+     * it's being initialized, which can happen before JsonBookCodec's own fields are.
+     */
+    private static final class Shared {
+        private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Constructor for JsonBookCodec
+     *
+     * @param indent - true to indent the output, as the per-book files are
+     */
+    JsonBookCodec(boolean indent) {
+        ObjectWriter bookWriter = Shared.MAPPER.writerFor(Book.class);
+        writer = indent ? bookWriter.with(SerializationFeature.INDENT_OUTPUT) : bookWriter;
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Book book) throws JsonProcessingException {
+        return writer.writeValueAsBytes(book);
+    }
+
+    @Override
+    public Book decode(byte[] data, int offset, int length) throws IOException {
+        return reader.readValue(data, offset, length);
+    }
+
+    /**
+     * Decodes a book from a JSON string, such as a Cosmos item.
+     *
+     * @param json - the book's JSON
+     * @return the decoded Book object
+     * @throws IOException if the JSON isn't a book
+     */
+    Book decode(String json) throws IOException {
+        return reader.readValue(json);
+    }
+}
@@ -3,20 +3,19 @@
 
 package com.azure.app;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Path;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 
 final class JsonHandler {
     private static Logger logger = LoggerFactory.getLogger(JsonHandler.class);
+    private static final JsonBookCodec CODEC = new JsonBookCodec(true);
 
     /**
      * Converts a json file back to a Book object
@@ -26,12 +25,7 @@ final class JsonHandler {
      */
     Book fromJSONtoBook(File jsonFile) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            Book b = mapper.readValue(jsonFile, Book.class);
-            return b;
-        } catch (JsonGenerationException e) {
-            logger.error("Error generating JSON file: ", e);
+            return CODEC.decode(Files.readAllBytes(jsonFile.toPath()));
         } catch (JsonMappingException e) {
             logger.error("Error mapping JSON file: ", e);
         } catch (IOException e) {
@@ -49,17 +43,14 @@ final class JsonHandler {
      */
     boolean writeJSON(Book book, String root) {
         if (book.isValid()) {
-            final Path fullBookPath = Paths.get(root, Constants.JSON_PATH, book.getAuthor().getLastName(),
-                book.getAuthor().getFirstName());
-            final File bookFile = fullBookPath.toFile();
+            final File jsonFile = getJsonFile(book, root);
+            final File bookFile = jsonFile.getParentFile();
             if (!bookFile.exists() && !bookFile.mkdirs()) {
-                logger.error("Could not create directories for: " + fullBookPath.toString());
+                logger.error("Could not create directories for: " + bookFile.getPath());
                 return false;
             }
             try {
-                ObjectMapper mapper = new ObjectMapper();
-                mapper.enable(SerializationFeature.INDENT_OUTPUT);
-                mapper.writeValue(Paths.get(bookFile.getPath(), book.getTitle() + ".json").toFile(), book);
+                Files.write(jsonFile.toPath(), CODEC.encode(book));
                 return true;
             } catch (IOException ex) {
                 logger.error("Couldn't find the right file: ", ex);
@@ -69,4 +60,39 @@ final class JsonHandler {
             return false;
         }
     }
+
+    /**
+     * Converts a Book object to the JSON that writeJSON stores.
+     *
+     * @param book - the Book object that's going to be converted
+     * @return the JSON as bytes
+     * @throws JsonProcessingException if the book can't be converted
+     */
+    byte[] toJSON(Book book) throws JsonProcessingException {
+        return CODEC.encode(book);
+    }
+
+    /**
+     * Returns the file the book is written to by writeJSON.
+     *
+     * @param book - the Book object whose file is needed
+     * @param root - the directory the library is stored in
+     * @return File - lib/jsonFiles/lastName/firstName/title.json under the root
+     */
+    File getJsonFile(Book book, String root) {
+        return getJsonFile(book, root, LibraryLayout.FLAT);
+    }
+
+    /**
+     * Returns the file the book is stored in when the library uses the given layout.
+     *
+     * @param book   - the Book object whose file is needed
+     * @param root   - the directory the library is stored in
+     * @param layout - how the author directories are laid out
+     * @return File - title.json in the author's directory under lib/jsonFiles
+     */
+    File getJsonFile(Book book, String root, LibraryLayout layout) {
+        return layout.authorDirectory(Paths.get(root, Constants.JSON_PATH), book.getAuthor())
+            .resolve(book.getTitle() + ".json").toFile();
+    }
 }
@@ -9,6 +9,7 @@ import com.azure.security.keyvault.secrets.SecretAsyncClient;
 import com.azure.security.keyvault.secrets.SecretClientBuilder;
 import com.azure.security.keyvault.secrets.models.Secret;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
@@ -25,8 +26,10 @@ import static com.azure.app.Constants.KEY_VAULT_URL;
 
 final class KeyVaultStorage {
     private SecretAsyncClient secretAsyncClient;
-    private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final Logger LOGGER = LoggerFactory.getLogger(KeyVaultStorage.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader BLOB_SETTINGS_READER = MAPPER.readerFor(BlobSettings.class);
+    private static final ObjectReader COSMOS_SETTINGS_READER = MAPPER.readerFor(CosmosSettings.class);
 
     KeyVaultStorage() {
         Properties keyVaultCredentials = new Properties();
@@ -58,7 +61,8 @@ final class KeyVaultStorage {
         Mono<Secret> secret = secretAsyncClient.getSecret(BLOB_CREDENTIALS);
         return secret.flatMap(secretValue -> {
             try {
-                return Mono.just(MAPPER.readValue(secretValue.value(), BlobSettings.class));
+                BlobSettings settings = BLOB_SETTINGS_READER.readValue(secretValue.value());
+                return Mono.just(settings);
             } catch (IOException e) {
                 LOGGER.error("Error setting up Blob Settings: ", e);
                 return Mono.error(new IllegalStateException("Couldn't set up Blob storage settings."));
@@ -75,7 +79,8 @@ final class KeyVaultStorage {
         Mono<Secret> secret = secretAsyncClient.getSecret(COSMOS_CREDENTIALS);
         return secret.flatMap(secretValue -> {
             try {
-                return Mono.just(MAPPER.readValue(secretValue.value(), CosmosSettings.class));
+                CosmosSettings settings = COSMOS_SETTINGS_READER.readValue(secretValue.value());
+                return Mono.just(settings);
             } catch (IOException e) {
                 LOGGER.error("Error setting up Cosmos Settings: ", e);
                 return Mono.error(new IllegalStateException("Couldn't set up Cosmos storage settings"));
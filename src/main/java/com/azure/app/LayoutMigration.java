@@ -0,0 +1,138 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.azure.app.Constants.BULK_BATCH_SIZE;
+import static com.azure.app.Constants.IMAGE_PATH;
+import static com.azure.app.Constants.JSON_PATH;
+import static com.azure.app.Constants.SERIALIZER;
+
+/**
+ * Moves a local library from the flat layout to the sharded one. Run it while the application isn't using the
+ * library: java -cp ... com.azure.app.LayoutMigration [root]
+ *
+ * <p>Books are moved in batches of BULK_BATCH_SIZE. For each book the cover is moved first, then writing the JSON
+ * file with its new cover path and deleting the old one are recorded as one journal change, so an interrupted run
+ * never loses a book or leaves it in both places. Running the tool again picks up the books that are still in the
+ * flat layout. Since the catalog is loaded from both layouts, the library can be used between runs.</p>
+ */
+final class LayoutMigration {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LayoutMigration.class);
+
+    private final String root;
+    private final Path jsonRoot;
+    private final Path workingDirectory;
+
+    /**
+     * Constructor for LayoutMigration
+     *
+     * @param root             - the directory the library is stored in
+     * @param workingDirectory - the directory the covers' paths are relative to
+     */
+    LayoutMigration(String root, Path workingDirectory) {
+        this.root = root;
+        this.jsonRoot = Paths.get(root, JSON_PATH);
+        this.workingDirectory = workingDirectory;
+    }
+
+    public static void main(String[] args) {
+        String root = args.length > 0 ? args[0] : System.getProperty("user.dir");
+        try {
+            int moved = new LayoutMigration(root, Paths.get(System.getProperty("user.dir"))).migrate();
+            System.out.println("Moved " + moved + " books to the sharded layout.");
+        } catch (IOException e) {
+            LOGGER.error("Migration stopped, run it again to continue: ", e);
+        }
+    }
+
+    /**
+     * Moves every book that's still in the flat layout. Files that can't be read as books are left where they are.
+     *
+     * @return the number of books that were moved
+     * @throws IOException if the journal can't be opened or a change can't be made
+     */
+    int migrate() throws IOException {
+        List<Path> files;
+        Path shards = jsonRoot.resolve(LibraryLayout.SHARD_DIRECTORY);
+        try (Stream<Path> walk = Files.walk(jsonRoot)) {
+            files = walk.filter(path -> !path.startsWith(shards) && path.toString().endsWith(".json")
+                && Files.isRegularFile(path)).sorted().collect(Collectors.toList());
+        }
+        int moved = 0;
+        // Opening the journal also redoes a batch that an earlier run didn't finish.
+        try (WriteAheadJournal journal = new WriteAheadJournal(root)) {
+            for (int start = 0; start < files.size(); start += BULK_BATCH_SIZE) {
+                moved += migrateBatch(journal, files.subList(start, Math.min(files.size(), start + BULK_BATCH_SIZE)));
+                LOGGER.info("Moved " + moved + " of " + files.size() + " books to the sharded layout.");
+            }
+        }
+        new CatalogSnapshot(root).delete();
+        return moved;
+    }
+
+    private int migrateBatch(WriteAheadJournal journal, List<Path> batch) throws IOException {
+        List<WriteAheadJournal.Operation> operations = new ArrayList<>();
+        List<Path> moved = new ArrayList<>();
+        for (Path file : batch) {
+            Book book = SERIALIZER.fromJSONtoBook(file.toFile());
+            if (book == null || !book.isValid()) {
+                LOGGER.warn("Leaving a file that isn't a book in place: " + file);
+                continue;
+            }
+            Book sharded = new Book(book.getTitle(), book.getAuthor(), moveCover(book), book.id());
+            Path target = SERIALIZER.getJsonFile(sharded, root, LibraryLayout.SHARDED).toPath();
+            operations.add(WriteAheadJournal.Operation.write(target, SERIALIZER.toJSON(sharded)));
+            operations.add(WriteAheadJournal.Operation.delete(file));
+            moved.add(file);
+        }
+        if (operations.isEmpty()) {
+            return 0;
+        }
+        long transaction = journal.begin(operations);
+        journal.apply(operations);
+        journal.commit(transaction);
+        moved.forEach(file -> LocalDocumentProvider.pruneEmptyDirectories(file, jsonRoot));
+        return moved.size();
+    }
+
+    /**
+     * Moves the book's cover to the author's sharded directory, if it's in the author's flat directory. A cover that
+     * was already moved by an interrupted run isn't there anymore, but its new path is returned all the same.
+     *
+     * @param book - Book whose cover is moved
+     * @return the cover's path in the sharded layout, or the cover's path unchanged if it's kept somewhere else
+     * @throws IOException if the cover can't be moved
+     */
+    private URI moveCover(Book book) throws IOException {
+        Path cover = Paths.get(book.getCover().getPath());
+        Path images = Paths.get(IMAGE_PATH);
+        if (cover.isAbsolute() || !LibraryLayout.FLAT.authorDirectory(images, book.getAuthor())
+            .equals(cover.getParent())) {
+            return book.getCover();
+        }
+        Path source = workingDirectory.resolve(cover);
+        Path target = workingDirectory.resolve(LibraryLayout.SHARDED.authorDirectory(images, book.getAuthor())
+            .resolve(cover.getFileName()));
+        if (Files.exists(source)) {
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            LocalDocumentProvider.pruneEmptyDirectories(source, workingDirectory.resolve(images));
+        }
+        return workingDirectory.toFile().toURI().relativize(target.toFile().toURI());
+    }
+}
@@ -0,0 +1,224 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.azure.app.Constants.LOCAL_IO;
+
+/**
+ * Exports a catalog to a single NDJSON file, one book per line, and reads such a file back.
+ *
+ * <p>A file whose name ends with .gz is written gzipped; gzipped files are recognized by their contents when read.
+ * Books are written and read one at a time with Jackson's streaming generator and parser, so neither direction
+ * holds more than a few books in memory however large the library is. Only the documents are archived; covers stay
+ * where the image provider keeps them.</p>
+ */
+final class LibraryArchive {
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LibraryArchive() {
+    }
+
+    /**
+     * Writes the books to the file, replacing it if it exists. The books are written on the LOCAL_IO scheduler as
+     * they arrive, and requested only as fast as they're written.
+     *
+     * @param books - Flux of the books to write, such as a provider's getBooks()
+     * @param file  - the file to write, gzipped if its name ends with .gz
+     * @return {@link Mono} of the number of books written
+     */
+    static Mono<Long> export(Flux<Book> books, Path file) {
+        return Mono.using(() -> openGenerator(file),
+            generator -> books.publishOn(LOCAL_IO)
+                .doOnNext(book -> {
+                    try {
+                        writeBook(generator, book);
+                    } catch (IOException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                })
+                .count(),
+            generator -> {
+                try {
+                    generator.close();
+                } catch (IOException e) {
+                    throw Exceptions.propagate(e);
+                }
+            });
+    }
+
+    /**
+     * Reads the books in the file, one at a time as they're requested. Fields other than the book's own are
+     * skipped, so a file written by a newer version can still be read.
+     *
+     * @param file - the NDJSON file to read, gzipped or not
+     * @return Flux of the books in the file, in order; it ends with an error if the file isn't NDJSON
+     */
+    static Flux<Book> read(Path file) {
+        return Flux.<Book, JsonParser>generate(() -> openParser(file), (parser, sink) -> {
+            try {
+                Book book = readBook(parser);
+                if (book == null) {
+                    sink.complete();
+                } else {
+                    sink.next(book);
+                }
+            } catch (IOException e) {
+                sink.error(e);
+            }
+            return parser;
+        }, parser -> {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Saves the books in the file through the provider's bulk save. Stored covers are relative to the working
+     * directory, while providers expect the cover a book is saved from, so relative covers are resolved against the
+     * working directory first. Records that aren't valid books are reported as failures and not passed on.
+     *
+     * @param file     - the NDJSON file to read, gzipped or not
+     * @param provider - the DocumentProvider to save the books to
+     * @return Flux of one SaveResult per record, not necessarily in the file's order
+     */
+    static Flux<SaveResult> importBooks(Path file, DocumentProvider provider) {
+        URI workingDirectory = new File(System.getProperty("user.dir")).toURI();
+        return read(file).map(book -> book.getCover() == null || book.getCover().isAbsolute() ? book
+            : new Book(book.getTitle(), book.getAuthor(), workingDirectory.resolve(book.getCover()), book.id()))
+            .publish(books -> Flux.merge(
+                books.filter(book -> !book.isValid())
+                    .map(book -> SaveResult.failure(book, new IllegalArgumentException("Book can't be saved."))),
+                provider.saveBooks(books.filter(Book::isValid))));
+    }
+
+    private static JsonGenerator openGenerator(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        try {
+            if (file.getFileName().toString().endsWith(".gz")) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            return FACTORY.createGenerator(new BufferedOutputStream(out, BUFFER_SIZE), JsonEncoding.UTF8);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    private static JsonParser openParser(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        try {
+            in.mark(2);
+            boolean gzipped = in.read() == 0x1f && in.read() == 0x8b;
+            in.reset();
+            return FACTORY.createParser(gzipped ? new GZIPInputStream(in, BUFFER_SIZE) : in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static void writeBook(JsonGenerator generator, Book book) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("title", book.getTitle());
+        generator.writeObjectFieldStart("author");
+        generator.writeStringField("lastName", book.getAuthor().getLastName());
+        generator.writeStringField("firstName", book.getAuthor().getFirstName());
+        generator.writeEndObject();
+        generator.writeStringField("cover", book.getCover() == null ? null : book.getCover().toString());
+        generator.writeStringField("id", book.id());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Reads the next book.
+     *
+     * @param parser - parser positioned between two books
+     * @return the book, or null at the end of the file
+     * @throws IOException if the next value isn't a book object
+     */
+    private static Book readBook(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a book object but found " + token + ".");
+        }
+        String title = null;
+        String lastName = null;
+        String firstName = null;
+        URI cover = null;
+        String id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            token = parser.nextToken();
+            if (field.equals("author") && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if (name.equals("lastName")) {
+                        lastName = parser.getValueAsString();
+                    } else if (name.equals("firstName")) {
+                        firstName = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (field.equals("title")) {
+                title = parser.getValueAsString();
+            } else if (field.equals("cover")) {
+                cover = toUri(parser.getValueAsString());
+            } else if (field.equals("id")) {
+                id = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Book(title, AuthorPool.author(firstName, lastName), cover, id);
+    }
+
+    /**
+     * Parses a cover path. A missing or malformed one is left null, which makes the book invalid.
+     *
+     * @param cover - the cover as written in the file
+     * @return the cover's URI, or null
+     */
+    private static URI toUri(String cover) {
+        if (cover == null) {
+            return null;
+        }
+        try {
+            return URI.create(cover);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
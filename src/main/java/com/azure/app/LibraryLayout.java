@@ -0,0 +1,45 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.nio.file.Path;
+
+/**
+ * How the local providers lay out an author's directories under lib/jsonFiles and lib/images.
+ *
+ * <p>FLAT puts them at lastName/firstName, so a common last name collects every author who has it in one directory.
+ * SHARDED puts a hidden .shards/xx directory in front, where xx is a hash of the author's names, spreading the
+ * authors over 256 directories. Both layouts can be read at once, since the catalog is loaded by walking the whole
+ * tree; only where new files are written depends on the layout. {@link LayoutMigration} moves a flat tree over.</p>
+ */
+enum LibraryLayout {
+    FLAT,
+    SHARDED;
+
+    static final String SHARD_DIRECTORY = ".shards";
+
+    /**
+     * Returns the author's directory in this layout.
+     *
+     * @param library - lib/jsonFiles or lib/images
+     * @param author  - Author of the book
+     * @return the directory the author's files are written to
+     */
+    Path authorDirectory(Path library, Author author) {
+        Path parent = this == FLAT ? library : library.resolve(SHARD_DIRECTORY).resolve(shard(author));
+        return parent.resolve(author.getLastName()).resolve(author.getFirstName());
+    }
+
+    /**
+     * Returns the shard directory name of an author: two hex digits from the hash of the last and first names.
+     * String.hashCode is specified, so the shard never changes between runs or JVMs.
+     *
+     * @param author - Author of the book
+     * @return the shard directory name, 00 to ff
+     */
+    static String shard(Author author) {
+        int hash = (author.getLastName() + "/" + author.getFirstName()).hashCode();
+        return String.format("%02x", (hash ^ (hash >>> 8) ^ (hash >>> 16) ^ (hash >>> 24)) & 0xff);
+    }
+}
@@ -8,6 +8,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
@@ -15,61 +17,410 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.azure.app.Constants.BULK_BATCH_SIZE;
 import static com.azure.app.Constants.IMAGE_PATH;
 import static com.azure.app.Constants.JSON_PATH;
+import static com.azure.app.Constants.LOCAL_IO;
 import static com.azure.app.Constants.SERIALIZER;
 
+/**
+ * Stores each book as a JSON file under lib/jsonFiles and keeps a catalog of them in memory.
+ *
+ * <p>The provider can be used from many threads. Writers take the lock stripe of each author they touch, chosen
+ * by last name, so writes for different authors run in parallel while two writes that could replace the same book,
+ * or prune the same directory, run one after the other. The in-memory catalog is only locked for the short time it
+ * takes to update it. Readers don't lock: the title and author indexes hold lists that are replaced, never changed,
+ * and getBooks() shares one copy of the catalog until the next change.</p>
+ */
 final class LocalDocumentProvider implements DocumentProvider {
-    private Flux<Book> jsonBooks;
-    private List<File> jsonFiles;
+    private static final int LOCK_STRIPES = 64;
+
+    private final Map<File, Book> catalog = new LinkedHashMap<>();
+    private final Map<String, List<Book>> titleIndex = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Book> sortedCatalog = new ConcurrentSkipListMap<>();
+    private final Map<String, List<File>> filesByKey = new HashMap<>();
+    private final TitleIndex titleSearch = new TitleIndex();
+    private final Map<String, List<Book>> authorIndex = new ConcurrentHashMap<>();
+    private final Lock[] authorLocks = new Lock[LOCK_STRIPES];
+    private volatile List<Book> catalogCopy;
+    private final Map<String, Long> directoryTimes = new LinkedHashMap<>();
+    private final CatalogSnapshot snapshot;
+    private final WriteAheadJournal journal;
+    private boolean snapshotDirty;
     private String root;
-    private final OptionChecker optionChecker = new OptionChecker();
+    private final int loadParallelism;
+    private final LibraryLayout layout;
+    private final boolean pathListing;
+    private LocalLibraryWatcher watcher;
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalDocumentProvider.class);
 
     LocalDocumentProvider(String root) {
+        this(root, false);
+    }
+
+    LocalDocumentProvider(String root, boolean watch) {
+        this(root, watch, Runtime.getRuntime().availableProcessors());
+    }
+
+    LocalDocumentProvider(String root, boolean watch, int loadParallelism) {
+        this(root, watch, loadParallelism, LibraryLayout.FLAT);
+    }
+
+    /**
+     * Constructor for LocalDocumentProvider
+     *
+     * @param root            - the directory the library is stored in
+     * @param watch           - true to keep the catalog in sync with JSON files that other processes add or remove
+     * @param loadParallelism - how many author directories are read and parsed at once when loading the catalog
+     * @param layout          - where new JSON files and covers are written; books in either layout are read
+     */
+    LocalDocumentProvider(String root, boolean watch, int loadParallelism, LibraryLayout layout) {
+        this(root, watch, loadParallelism, layout, false);
+    }
+
+    /**
+     * Constructor for LocalDocumentProvider
+     *
+     * @param root            - the directory the library is stored in
+     * @param watch           - true to keep the catalog in sync with JSON files that other processes add or remove
+     * @param loadParallelism - how many author directories are read at once when loading the catalog
+     * @param layout          - where new JSON files and covers are written; books in either layout are read
+     * @param pathListing     - true to load the catalog from the JSON files' paths alone and read each file only when
+     *                        its book's cover or id is needed; the catalog snapshot isn't used, since writing it
+     *                        would read every file
+     */
+    LocalDocumentProvider(String root, boolean watch, int loadParallelism, LibraryLayout layout,
+                          boolean pathListing) {
         this.root = root;
+        this.loadParallelism = Math.max(1, loadParallelism);
+        this.layout = layout;
+        this.pathListing = pathListing;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            authorLocks[i] = new ReentrantLock();
+        }
         File directoryJSON = new File(Paths.get(root, JSON_PATH).toString());
         if (!directoryJSON.exists() && !directoryJSON.mkdirs()) {
             LOGGER.error("Couldn't create non-existent JSON directory: " + directoryJSON.getAbsolutePath());
         }
-        jsonBooks = initializeBooks().cache();
-        jsonFiles = retrieveJsonFiles();
+        try {
+            journal = new WriteAheadJournal(root);
+        } catch (IOException e) {
+            LOGGER.error("Couldn't open the journal: ", e);
+            throw new IllegalStateException("Couldn't open the journal.", e);
+        }
+        snapshot = new CatalogSnapshot(root);
+        if (journal.redidChanges()) {
+            // A redone change may have rewritten files in place, which leaves the directory times unchanged.
+            snapshot.delete();
+        }
+        if (pathListing) {
+            initializeBooks();
+        } else if (!snapshot.load(directoryTimes, this::addToCatalog)) {
+            clearCatalog();
+            initializeBooks();
+            snapshot.write(directoryTimes, catalog);
+        }
+        LOGGER.info(AuthorPool.report());
+        if (watch) {
+            try {
+                watcher = new LocalLibraryWatcher(directoryJSON.toPath(), new CatalogSync());
+                watcher.start();
+            } catch (IOException e) {
+                LOGGER.error("Couldn't watch the JSON directory, changes from other processes won't be seen: ", e);
+            }
+        }
     }
 
     /**
-     * Returns the Flux of Book objects
+     * Returns where new JSON files and covers are written.
+     *
+     * @return the layout given to the constructor
+     */
+    LibraryLayout layout() {
+        return layout;
+    }
+
+    /**
+     * Returns the Flux of Book objects, ordered by author and title like the pages of {@link #getBooks(int, String)}.
+     * The catalog is copied at most once per change and the copy is shared by every reader until the next change.
      *
      * @return Flux<Book> the flux with all the book information </Book>
      */
     @Override
     public Flux<Book> getBooks() {
-        return jsonBooks;
+        return Flux.defer(() -> {
+            List<Book> books = catalogCopy;
+            if (books == null) {
+                synchronized (catalog) {
+                    books = catalogCopy;
+                    if (books == null) {
+                        books = Collections.unmodifiableList(new ArrayList<>(sortedCatalog.values()));
+                        catalogCopy = books;
+                    }
+                }
+            }
+            return Flux.fromIterable(books);
+        });
     }
 
     /**
-     * Stores all the Book info from the JSON files into a Flux
-     * into a Flux object
+     * Loads all the Book info from the JSON files into the catalog and its indexes. This is the only time the
+     * JSON directory is walked; afterwards every save and delete is applied to the catalog directly.
      *
-     * @return Flux<Book> the flux with all the book information </Book>
+     * <p>The last name directories are read and parsed in parallel on a bounded scheduler, then merged back in
+     * name order so the catalog always comes out in the same order. In the sharded layout each shard is read as one
+     * unit, and a partly migrated library has both. Each directory's modification time is recorded before its files
+     * are read, for the catalog snapshot.</p>
+     *
+     * <p>With path listing the files aren't read at all: each book is built from its path and reads its file the
+     * first time its cover or id is needed, so loading is a directory scan.</p>
      */
-    private Flux<Book> initializeBooks() {
+    private void initializeBooks() {
+        Path jsonRoot = Paths.get(root, JSON_PATH);
+        directoryTimes.put("", CatalogSnapshot.modifiedTime(jsonRoot));
+        List<Path> children = new ArrayList<>();
+        try (Stream<Path> list = Files.list(jsonRoot)) {
+            for (Path child : (Iterable<Path>) list.sorted()::iterator) {
+                if (child.getFileName().toString().equals(LibraryLayout.SHARD_DIRECTORY) && Files.isDirectory(child)) {
+                    directoryTimes.put(jsonRoot.relativize(child).toString(), CatalogSnapshot.modifiedTime(child));
+                    try (Stream<Path> shards = Files.list(child)) {
+                        shards.sorted().forEach(children::add);
+                    }
+                } else {
+                    children.add(child);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error loading books: ", e);
+            return;
+        }
+        Scheduler loader = Schedulers.newParallel("catalog-loader", loadParallelism);
         try {
-            return Flux.fromStream(Files.walk(Paths.get(root, JSON_PATH)))
-                .filter(f -> f.toFile().getName().endsWith(".json"))
-                .map(path -> SERIALIZER.fromJSONtoBook(new File(path.toString())));
+            Flux.fromIterable(children)
+                .parallel(loadParallelism)
+                .runOn(loader)
+                .map(child -> loadDirectory(jsonRoot, child, pathListing))
+                .ordered(Comparator.comparing((LoadedDirectory loaded) -> loaded.directory))
+                .toStream()
+                .forEach(loaded -> {
+                    directoryTimes.putAll(loaded.directoryTimes);
+                    loaded.books.forEach(this::addToCatalog);
+                });
+        } finally {
+            loader.dispose();
+        }
+    }
+
+    /**
+     * Reads one entry of lib/jsonFiles or of a shard: an author's last name directory and everything below it, a
+     * whole shard, or a stray JSON file. Runs on the loader scheduler, so it only touches its own result.
+     *
+     * @param jsonRoot    - the lib/jsonFiles directory
+     * @param child       - the entry to read
+     * @param pathListing - true to build the books from their paths instead of reading the files
+     * @return the directory times and books that were found, with the books in path order
+     */
+    private static LoadedDirectory loadDirectory(Path jsonRoot, Path child, boolean pathListing) {
+        LoadedDirectory loaded = new LoadedDirectory(child);
+        try (Stream<Path> walk = Files.walk(child)) {
+            walk.forEach(path -> {
+                File file = path.toFile();
+                if (file.isDirectory()) {
+                    loaded.directoryTimes.put(jsonRoot.relativize(path).toString(),
+                        CatalogSnapshot.modifiedTime(path));
+                } else if (file.getName().endsWith(".json")) {
+                    Book book = pathListing ? bookFromPath(jsonRoot, path) : null;
+                    if (book == null) {
+                        book = SERIALIZER.fromJSONtoBook(file);
+                    }
+                    if (book != null) {
+                        loaded.books.put(file, book);
+                    }
+                }
+            });
         } catch (IOException e) {
-            LOGGER.error("Error making Flux: ", e);
-            return Flux.error(e);
+            LOGGER.error("Error loading books from " + child + ": ", e);
+        }
+        return loaded;
+    }
+
+    /**
+     * Builds a book from the path of its JSON file, lastName/firstName/title.json under lib/jsonFiles or a shard. The
+     * file is read the first time the book's cover or id is asked for; a file that can't be read then leaves the
+     * book without a cover, so it isn't valid.
+     *
+     * @param jsonRoot - the lib/jsonFiles directory
+     * @param file     - the JSON file
+     * @return the book, or null if the file isn't where a saved book's file would be
+     */
+    static Book bookFromPath(Path jsonRoot, Path file) {
+        Path relative = jsonRoot.relativize(file);
+        if (relative.getNameCount() == 5 && relative.getName(0).toString().equals(LibraryLayout.SHARD_DIRECTORY)) {
+            relative = relative.subpath(2, 5);
+        }
+        if (relative.getNameCount() != 3) {
+            return null;
+        }
+        String name = relative.getFileName().toString();
+        File json = file.toFile();
+        return Book.stored(name.substring(0, name.length() - ".json".length()),
+            AuthorPool.author(relative.getName(1).toString(), relative.getName(0).toString()),
+            () -> SERIALIZER.fromJSONtoBook(json));
+    }
+
+    private void clearCatalog() {
+        catalog.clear();
+        catalogCopy = null;
+        filesByKey.clear();
+        titleIndex.clear();
+        authorIndex.clear();
+        sortedCatalog.clear();
+        titleSearch.clear();
+        directoryTimes.clear();
+    }
+
+    /**
+     * Removes the snapshot on disk until the next one is written. Changes call this before the journal records them:
+     * rewriting a file in place leaves its directory's time unchanged, so a snapshot still on disk after a crash
+     * would pass validation with the old book in it. Called with the catalog's lock held.
+     */
+    private void invalidateSnapshot() {
+        if (!snapshotDirty) {
+            snapshot.delete();
+            snapshotDirty = true;
+        }
+    }
+
+    /**
+     * Records that a JSON file was written or removed. The snapshot on disk no longer matches, so it's removed until
+     * the next one is written, and the times of the file's directories are refreshed.
+     *
+     * @param file - the JSON file that changed
+     */
+    private void catalogChanged(File file) {
+        invalidateSnapshot();
+        Path jsonRoot = Paths.get(root, JSON_PATH);
+        Path directory = file.toPath().getParent();
+        while (directory != null && directory.startsWith(jsonRoot)) {
+            String key = jsonRoot.relativize(directory).toString();
+            long time = CatalogSnapshot.modifiedTime(directory);
+            if (time < 0) {
+                directoryTimes.remove(key);
+            } else {
+                directoryTimes.put(key, time);
+            }
+            directory = directory.getParent();
+        }
+    }
+
+    /**
+     * Returns one page of books by walking the sorted catalog from the continuation key, so each page costs the
+     * same however far into the catalog it is.
+     *
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    @Override
+    public Mono<BookPage> getBooks(int pageSize, String continuationKey) {
+        return Mono.defer(() -> page("", null, pageSize, continuationKey));
+    }
+
+    /**
+     * Returns one page of the books by the author from the sorted catalog.
+     *
+     * @param author          - Contains the name of the author the user is looking for
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    @Override
+    public Mono<BookPage> findBook(Author author, int pageSize, String continuationKey) {
+        String prefix = BookPage.authorPrefix(author);
+        // The separator ends every prefix, so the next character up bounds the author's books.
+        return Mono.defer(() -> page(prefix, prefix.substring(0, prefix.length() - 1) + '\u0001', pageSize,
+            continuationKey));
+    }
+
+    /**
+     * Returns one page of the books whose authors' last names fall in the range, from the part of the sorted catalog
+     * that holds them.
+     *
+     * @param fromLastName    - the first last name in the range
+     * @param toLastName      - the last name, or last name prefix, that ends the range
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    @Override
+    public Mono<BookPage> findBooks(String fromLastName, String toLastName, int pageSize, String continuationKey) {
+        return Mono.defer(() -> page(fromLastName, BookPage.lastNameBound(toLastName), pageSize, continuationKey));
+    }
+
+    /**
+     * Reads a page from a range of the sorted catalog. The sorted catalog is a concurrent map, so pages are read
+     * without the catalog lock; a save made while a page is read may or may not be on it.
+     *
+     * @param low             - the first sort key in the range
+     * @param high            - the sort key that ends the range, which isn't included, or null for no end
+     * @param pageSize        - the most books to return
+     * @param continuationKey - the key returned with the previous page, or null for the first page
+     * @return {@link Mono} of the page
+     */
+    private Mono<BookPage> page(String low, String high, int pageSize, String continuationKey) {
+        if (pageSize <= 0) {
+            return Mono.error(new IllegalArgumentException("Page size must be positive."));
+        }
+        String after;
+        try {
+            after = continuationKey == null ? null : BookPage.decodeKey(continuationKey);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+        boolean resume = after != null && after.compareTo(low) >= 0;
+        String from = resume ? after : low;
+        if (high != null && from.compareTo(high) >= 0) {
+            return Mono.just(new BookPage(Collections.emptyList(), null));
+        }
+        NavigableMap<String, Book> range = high == null ? sortedCatalog.tailMap(from, !resume)
+            : sortedCatalog.subMap(from, !resume, high, false);
+        List<Book> books = new ArrayList<>(pageSize);
+        String last = null;
+        boolean more = false;
+        for (Map.Entry<String, Book> entry : range.entrySet()) {
+            if (books.size() == pageSize) {
+                more = true;
+                break;
+            }
+            books.add(entry.getValue());
+            last = entry.getKey();
         }
+        return Mono.just(new BookPage(books, more ? BookPage.encodeKey(last) : null));
     }
 
     /**
@@ -84,42 +435,62 @@ final class LocalDocumentProvider implements DocumentProvider {
      */
     @Override
     public Mono<Void> saveBook(String title, Author author, URI path) {
-        File imagePath = new File(path);
-        String extension = FilenameUtils.getExtension(imagePath.getAbsolutePath());
-        final Path fullImagePath = Paths.get(root, IMAGE_PATH, author.getLastName(),
-            author.getFirstName());
-        File imageFile = fullImagePath.toFile();
-        if (!imageFile.exists() && !imageFile.mkdirs()) {
-            LOGGER.error("Couldn't create directories for: " + imageFile.getAbsolutePath());
-        }
-        String blobTitle;
-        try {
-            blobTitle = URLEncoder.encode(title.replace(' ', '-'), StandardCharsets.US_ASCII.toString());
-        } catch (UnsupportedEncodingException e) {
-            LOGGER.error("Error encoding: ", e);
-            return Mono.error(e);
-        }
-        File relativePath = Paths.get(IMAGE_PATH, author.getLastName(), author.getFirstName(),
-            blobTitle + "." + extension).toFile();
-        URI saved = relativePath.toURI();
-        URI relative = new File(System.getProperty("user.dir")).toURI().relativize(saved);
-        Book book = new Book(title, author, relative);
-        duplicateBook(book);
-        if (book.isValid()) {
-            boolean bookSaved = SERIALIZER.writeJSON(book, root);
-            jsonBooks = initializeBooks().cache();
-            jsonFiles = retrieveJsonFiles();
-            if (bookSaved) {
-                return Mono.empty();
-            } else {
+        return Mono.<Void>defer(() -> {
+            File imageFile = layout.authorDirectory(Paths.get(root, IMAGE_PATH), author).toFile();
+            if (!imageFile.exists() && !imageFile.mkdirs()) {
+                LOGGER.error("Couldn't create directories for: " + imageFile.getAbsolutePath());
+            }
+            URI relative;
+            try {
+                relative = relativeCover(title, author, path, layout);
+            } catch (UnsupportedEncodingException e) {
+                LOGGER.error("Error encoding: ", e);
+                return Mono.error(e);
+            }
+            Book book = new Book(title, AuthorPool.canonical(author), relative);
+            if (!book.isValid()) {
                 return Mono.error(new IllegalStateException("Unsuccessful save"));
             }
-        }
-        return Mono.error(new IllegalStateException("Unsuccessful save"));
+            return writeBook(book, null);
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Returns where the local image provider keeps the cover, relative to the working directory.
+     *
+     * @param title  - String containing the title of the book
+     * @param author - Author object of the book
+     * @param path   - File containing the cover image of the book
+     * @return URI of lib/images/lastName/firstName/title.extension relative to the working directory
+     * @throws UnsupportedEncodingException if the title can't be encoded
+     */
+    static URI relativeCover(String title, Author author, URI path) throws UnsupportedEncodingException {
+        return relativeCover(title, author, path, LibraryLayout.FLAT);
+    }
+
+    /**
+     * Returns where the local image provider keeps the cover in the given layout, relative to the working directory.
+     *
+     * @param title  - String containing the title of the book
+     * @param author - Author object of the book
+     * @param path   - File containing the cover image of the book
+     * @param layout - how the author directories are laid out
+     * @return URI of title.extension in the author's directory under lib/images, relative to the working directory
+     * @throws UnsupportedEncodingException if the title can't be encoded
+     */
+    static URI relativeCover(String title, Author author, URI path, LibraryLayout layout)
+        throws UnsupportedEncodingException {
+        String extension = FilenameUtils.getExtension(new File(path).getAbsolutePath());
+        String blobTitle = URLEncoder.encode(title.replace(' ', '-'), StandardCharsets.US_ASCII.toString());
+        File relativePath = layout.authorDirectory(Paths.get(IMAGE_PATH), author)
+            .resolve(blobTitle + "." + extension).toFile();
+        URI saved = relativePath.toURI();
+        return new File(System.getProperty("user.dir")).toURI().relativize(saved);
     }
 
     /**
-     * Overwrites the old book with the contents in the new book
+     * Overwrites the old book with the contents in the new book. Writing the new book and removing the old one are
+     * journaled as a single change.
      *
      * @param oldBook   - Book object that will be changed
      * @param newBook   - Book object with the new information to change to
@@ -128,32 +499,230 @@ final class LocalDocumentProvider implements DocumentProvider {
      */
     @Override
     public Mono<Void> editBook(Book oldBook, Book newBook, boolean saveCover) {
-        if (saveCover) {
-            File image = Paths.get(System.getProperty("user.dir"), oldBook.getCover().getPath()).toFile();
-            return saveBook(newBook.getTitle(), newBook.getAuthor(), image.toURI()).then(
-                deleteBook(oldBook));
-        } else {
-            return saveBook(newBook.getTitle(), newBook.getAuthor(), newBook.getCover()); //Overwrites old image
+        return Mono.<Void>defer(() -> {
+            if (saveCover) {
+                File image = Paths.get(System.getProperty("user.dir"), oldBook.getCover().getPath()).toFile();
+                Book book;
+                try {
+                    book = new Book(newBook.getTitle(), AuthorPool.canonical(newBook.getAuthor()),
+                        relativeCover(newBook.getTitle(), newBook.getAuthor(), image.toURI(), layout));
+                } catch (UnsupportedEncodingException e) {
+                    LOGGER.error("Error encoding: ", e);
+                    return Mono.error(e);
+                }
+                return writeBook(book, oldBook);
+            } else {
+                return saveBook(newBook.getTitle(), newBook.getAuthor(), newBook.getCover()); //Overwrites old image
+            }
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Writes the book, replacing any book with the same title and author, and removes the replaced book if one is
+     * given. The writes and deletes are recorded in the journal before any file is touched.
+     *
+     * @param book     - Book to write
+     * @param replaced - Book to remove in the same change, or null
+     * @return {@link Mono} that completes once the change is applied
+     */
+    private Mono<Void> writeBook(Book book, Book replaced) {
+        File jsonFile = SERIALIZER.getJsonFile(book, root, layout);
+        List<WriteAheadJournal.Operation> operations = new ArrayList<>();
+        List<File> removed = new ArrayList<>();
+        List<Lock> locks = lockAuthors(replaced == null ? Collections.singletonList(book)
+            : Arrays.asList(book, replaced));
+        try {
+            operations.add(WriteAheadJournal.Operation.write(jsonFile.toPath(), SERIALIZER.toJSON(book)));
+            synchronized (catalog) {
+                replaceDuplicates(book, jsonFile, operations, removed);
+                if (replaced != null) {
+                    for (File file : matchingFiles(replaced)) {
+                        if (!file.equals(jsonFile) && !removed.contains(file)) {
+                            removed.add(file);
+                            operations.add(WriteAheadJournal.Operation.delete(file.toPath()));
+                        }
+                    }
+                }
+                invalidateSnapshot();
+            }
+            long transaction = journal.begin(operations);
+            try {
+                journal.apply(operations);
+                synchronized (catalog) {
+                    removed.forEach(this::removeFromCatalog);
+                    addToCatalog(jsonFile, book);
+                    catalogChanged(jsonFile);
+                }
+                journal.commit(transaction);
+            } finally {
+                // Does nothing once the change is committed.
+                journal.abort(transaction);
+            }
+            if (!removed.isEmpty()) {
+                deleteEmptyDirectories(removed);
+                synchronized (catalog) {
+                    removed.forEach(this::catalogChanged);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Couldn't save book: ", e);
+            return Mono.error(e);
+        } finally {
+            unlock(locks);
         }
+        return Mono.empty();
     }
 
     /**
-     * Deletes the old book if the new book has a the same title and author
+     * Saves the books in batches of BULK_BATCH_SIZE. Each batch is a single journal change and takes the locks of
+     * its authors once, so it costs one fsync however many books it holds. The next batch is only requested once the
+     * results of the previous one have been consumed.
+     *
+     * @param books - Flux of the Book objects to save
+     * @return Flux of one SaveResult per book, in the same order
+     */
+    @Override
+    public Flux<SaveResult> saveBooks(Flux<Book> books) {
+        return books.buffer(BULK_BATCH_SIZE).concatMap(batch -> Flux.defer(() -> Flux.fromIterable(writeBooks(batch)))
+            .subscribeOn(LOCAL_IO), 1);
+    }
+
+    /**
+     * Writes a batch of books as one journal change. A book that can't be converted fails on its own; if the change
+     * can't be written, every book in it fails.
+     *
+     * @param batch - the Book objects to save
+     * @return one SaveResult per book, in the same order
+     */
+    private List<SaveResult> writeBooks(List<Book> batch) {
+        SaveResult[] results = new SaveResult[batch.size()];
+        List<Integer> pending = new ArrayList<>();
+        List<Book> books = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Book original = batch.get(i);
+            try {
+                Book book = new Book(original.getTitle(), AuthorPool.canonical(original.getAuthor()),
+                    relativeCover(original.getTitle(), original.getAuthor(), original.getCover(), layout));
+                if (book.isValid()) {
+                    pending.add(i);
+                    books.add(book);
+                    files.add(SERIALIZER.getJsonFile(book, root, layout));
+                } else {
+                    results[i] = SaveResult.failure(original, new IllegalStateException("Unsuccessful save"));
+                }
+            } catch (UnsupportedEncodingException e) {
+                results[i] = SaveResult.failure(original, e);
+            }
+        }
+        // A book saved twice in the same batch is only written once, as its last version.
+        Map<String, Integer> latest = new LinkedHashMap<>();
+        for (int i = 0; i < books.size(); i++) {
+            latest.remove(bookKey(books.get(i)));
+            latest.put(bookKey(books.get(i)), i);
+        }
+        List<WriteAheadJournal.Operation> operations = new ArrayList<>();
+        List<File> removed = new ArrayList<>();
+        List<Lock> locks = lockAuthors(books);
+        try {
+            synchronized (catalog) {
+                for (int i : latest.values()) {
+                    operations.add(WriteAheadJournal.Operation.write(files.get(i).toPath(),
+                        SERIALIZER.toJSON(books.get(i))));
+                    replaceDuplicates(books.get(i), files.get(i), operations, removed);
+                }
+                invalidateSnapshot();
+            }
+            long transaction = journal.begin(operations);
+            try {
+                journal.apply(operations);
+                synchronized (catalog) {
+                    removed.forEach(this::removeFromCatalog);
+                    for (int i : latest.values()) {
+                        addToCatalog(files.get(i), books.get(i));
+                        catalogChanged(files.get(i));
+                    }
+                }
+                journal.commit(transaction);
+            } finally {
+                // Does nothing once the change is committed.
+                journal.abort(transaction);
+            }
+            deleteEmptyDirectories(removed);
+            synchronized (catalog) {
+                removed.forEach(this::catalogChanged);
+            }
+            pending.forEach(i -> results[i] = SaveResult.success(batch.get(i)));
+        } catch (IOException e) {
+            LOGGER.error("Couldn't save a batch of books: ", e);
+            pending.forEach(i -> results[i] = SaveResult.failure(batch.get(i), e));
+        } finally {
+            unlock(locks);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Adds the operations that replace any book with the same title and author: its cover is deleted unless the new
+     * book uses the same one, and its JSON file is deleted unless the new book is written over it.
+     *
+     * @param book       - Book that's about to be written
+     * @param jsonFile   - the file the book is written to
+     * @param operations - receives the deletes
+     * @param removed    - receives the JSON files that are deleted
+     */
+    private void replaceDuplicates(Book book, File jsonFile, List<WriteAheadJournal.Operation> operations,
+                                   List<File> removed) {
+        for (File file : matchingFiles(book)) {
+            Book duplicate = catalog.get(file);
+            if (!duplicate.getCover().equals(book.getCover())) {
+                operations.add(WriteAheadJournal.Operation.delete(
+                    Paths.get(System.getProperty("user.dir"), duplicate.getCover().getPath())));
+            }
+            if (!file.equals(jsonFile) && !removed.contains(file)) {
+                removed.add(file);
+                operations.add(WriteAheadJournal.Operation.delete(file.toPath()));
+            }
+        }
+    }
+
+    /**
+     * Returns the JSON files in the catalog that hold the book, by looking up its key.
      *
      * @param bookToCompare - Book object that's going to be checked
+     * @return List of the matching files
      */
-    private void duplicateBook(Book bookToCompare) {
-        //Checks to see if the book has a duplicate, if so it'll delete it so it can be overwritten
-        jsonFiles.removeIf(x -> {
-            boolean result = optionChecker.checkFile(x, bookToCompare);
-            if (result) {
-                Book imageToDelete = SERIALIZER.fromJSONtoBook(x);
-                Paths.get(System.getProperty("user.dir"),
-                    imageToDelete.getCover().getPath()).toFile().delete();
-                return true;
-            }
-            return false;
-        });
+    private List<File> matchingFiles(Book bookToCompare) {
+        List<File> files = filesByKey.get(bookKey(bookToCompare));
+        return files == null ? new ArrayList<>() : new ArrayList<>(files);
+    }
+
+    /**
+     * Returns the key that identifies a book: its author's last and first names and its title. A trailing period is
+     * dropped from each name, because some file systems drop it from directory names, as OptionChecker.checkFile
+     * does.
+     *
+     * @param book - the Book object
+     * @return the book's key
+     */
+    private static String bookKey(Book book) {
+        return canonicalKey(book.getAuthor().getLastName(), book.getAuthor().getFirstName(), book.getTitle());
+    }
+
+    /**
+     * Returns the key of the book stored in a JSON file, from the file's path alone.
+     *
+     * @param file - the JSON file, in a lastName/firstName directory of either layout
+     * @return the book's key
+     */
+    private static String fileKey(File file) {
+        File firstName = file.getParentFile();
+        return canonicalKey(firstName.getParentFile().getName(), firstName.getName(),
+            FilenameUtils.getBaseName(file.getName()));
+    }
+
+    private static String canonicalKey(String lastName, String firstName, String title) {
+        return Author.withoutTrailingPeriod(lastName) + "/" + Author.withoutTrailingPeriod(firstName) + "/" + title;
     }
 
     /**
@@ -166,63 +735,201 @@ final class LocalDocumentProvider implements DocumentProvider {
      */
     @Override
     public Mono<Void> deleteBook(Book bookToCompare) {
-        boolean delete = jsonFiles.removeIf(x -> {
-            boolean result = optionChecker.checkFile(x, bookToCompare);
-            if (result) {
-                x.delete();
+        return Mono.<Void>defer(() -> {
+            List<Lock> locks = lockAuthors(Collections.singletonList(bookToCompare));
+            try {
+                List<File> deleted;
+                synchronized (catalog) {
+                    deleted = matchingFiles(bookToCompare);
+                    if (!deleted.isEmpty()) {
+                        invalidateSnapshot();
+                    }
+                }
+                if (deleted.isEmpty()) {
+                    return Mono.error(new IllegalStateException(""));
+                }
+                List<WriteAheadJournal.Operation> operations = deleted.stream()
+                    .map(file -> WriteAheadJournal.Operation.delete(file.toPath())).collect(Collectors.toList());
+                long transaction = journal.begin(operations);
+                try {
+                    journal.apply(operations);
+                    synchronized (catalog) {
+                        deleted.forEach(this::removeFromCatalog);
+                    }
+                    journal.commit(transaction);
+                } finally {
+                    // Does nothing once the change is committed.
+                    journal.abort(transaction);
+                }
+                deleteEmptyDirectories(deleted);
+                synchronized (catalog) {
+                    deleted.forEach(this::catalogChanged);
+                }
+                return Mono.empty();
+            } catch (IOException e) {
+                LOGGER.error("Couldn't delete book: ", e);
+                return Mono.error(e);
+            } finally {
+                unlock(locks);
+            }
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Takes the lock stripes of the books' authors, in stripe order so that two writers can't deadlock. The stripe
+     * depends only on the last name without a trailing period, so every book that could share a key or a last name
+     * directory with another shares its stripe too.
+     *
+     * @param books - the books about to be written or deleted
+     * @return the locks that were taken, to pass to unlock
+     */
+    private List<Lock> lockAuthors(Collection<Book> books) {
+        SortedSet<Integer> stripes = new TreeSet<>();
+        for (Book book : books) {
+            stripes.add(Math.floorMod(Author.withoutTrailingPeriod(book.getAuthor().getLastName()).hashCode(),
+                LOCK_STRIPES));
+        }
+        List<Lock> locks = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            authorLocks[stripe].lock();
+            locks.add(authorLocks[stripe]);
+        }
+        return locks;
+    }
+
+    private static void unlock(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    private void removeFromCatalog(File file) {
+        Book book = catalog.remove(file);
+        if (book != null) {
+            catalogCopy = null;
+            unindexBook(book);
+            String key = fileKey(file);
+            List<File> files = filesByKey.get(key);
+            files.remove(file);
+            if (files.isEmpty()) {
+                filesByKey.remove(key);
             }
-            return result;
-        });
-        if (delete) {
-            deleteEmptyDirectories();
-            jsonBooks = initializeBooks().cache();
-            return Mono.empty();
         }
-        return Mono.error(new IllegalStateException(""));
     }
 
     /**
-     * Retrieves the files on book information from the local directory
+     * Records the book under its JSON file, replacing whatever was previously stored in that file.
      *
-     * @return a List of Files
+     * @param file - the JSON file the book is stored in
+     * @param book - Book that was loaded or saved
      */
-    private List<File> retrieveJsonFiles() {
-        try (Stream<Path> walk = Files.walk(Paths.get(JSON_PATH))) {
-            return walk.map(Path::toFile).filter(f -> f.getName().endsWith(".json"))
-                .collect(Collectors.toList());
-        } catch (IOException e) {
-            LOGGER.error("Exception deleting book file.", e);
-            return Collections.emptyList();
+    private void addToCatalog(File file, Book book) {
+        Book previous = catalog.put(file, book);
+        catalogCopy = null;
+        if (previous != null) {
+            unindexBook(previous);
+        } else {
+            filesByKey.computeIfAbsent(fileKey(file), key -> new ArrayList<>(1)).add(file);
         }
+        indexBook(book);
     }
 
     /**
-     * Clears out any empty directories that might have been leftover from when the JSON file was deleted.
+     * Adds the book to the title and author indexes and the sorted catalog. Called under the catalog lock; the
+     * index lists are replaced rather than changed, so readers holding the old list aren't affected.
+     *
+     * @param book - Book that was loaded or saved
      */
-    private void deleteEmptyDirectories() {
-        File[] files = new File(JSON_PATH).listFiles();
-        assert files != null;
-        clearFiles(files);
+    private void indexBook(Book book) {
+        addToIndex(titleIndex, book.getTitle(), book);
+        addToIndex(authorIndex, authorKey(book.getAuthor()), book);
+        sortedCatalog.put(BookPage.sortKey(book), book);
+        titleSearch.add(book);
     }
 
     /**
-     * Assists the emptyDirectory method by traversing through the files. When it finds an empty directory without a
-     * JSON file, it deletes that file.
+     * Removes any book with the same title and author from the title and author indexes and the sorted catalog.
      *
-     * @param files - the folder containing the other files in the library.
+     * @param book - Book that was deleted or overwritten
      */
-    private void clearFiles(File[] files) {
-        for (File file : files) {
-            if (file == null) {
+    private void unindexBook(Book book) {
+        removeFromIndex(titleIndex, book.getTitle(), book);
+        removeFromIndex(authorIndex, authorKey(book.getAuthor()), book);
+        sortedCatalog.remove(BookPage.sortKey(book));
+        titleSearch.remove(book);
+    }
+
+    private static void addToIndex(Map<String, List<Book>> index, String key, Book book) {
+        List<Book> books = index.get(key);
+        List<Book> copy = books == null ? new ArrayList<>(1) : new ArrayList<>(books);
+        copy.add(book);
+        index.put(key, Collections.unmodifiableList(copy));
+    }
+
+    private static void removeFromIndex(Map<String, List<Book>> index, String key, Book book) {
+        List<Book> books = index.get(key);
+        if (books == null) {
+            return;
+        }
+        String author = authorKey(book.getAuthor());
+        List<Book> copy = new ArrayList<>(books);
+        copy.removeIf(b -> b.getTitle().contentEquals(book.getTitle())
+            && authorKey(b.getAuthor()).contentEquals(author));
+        if (copy.isEmpty()) {
+            index.remove(key);
+        } else {
+            index.put(key, Collections.unmodifiableList(copy));
+        }
+    }
+
+    /**
+     * Builds the key used by the author index. Neither name can contain a path separator, since both are used as
+     * directory names.
+     *
+     * @param author - Author of the book
+     * @return String key made up of the last and first name
+     */
+    private static String authorKey(Author author) {
+        return author.getLastName() + "/" + author.getFirstName();
+    }
+
+    /**
+     * Clears out the first and last name directories left empty by deleting JSON files. Called with the authors'
+     * locks held, and every author with the same last name shares a lock, so a save can't write into a directory
+     * while it's being removed. Directories above the last name, which other authors share, are left alone.
+     *
+     * @param deleted - the JSON files that were deleted
+     */
+    private void deleteEmptyDirectories(List<File> deleted) {
+        Path jsonRoot = Paths.get(root, JSON_PATH);
+        for (File file : deleted) {
+            Path authors = file.toPath().getParent().getParent().getParent();
+            pruneEmptyDirectories(file.toPath(), authors.startsWith(jsonRoot) ? authors : jsonRoot);
+        }
+    }
+
+    /**
+     * Deletes the parent directories of a deleted file that are now empty, walking up until a directory isn't empty
+     * or the library root is reached. Only the directories on the file's path are looked at.
+     *
+     * @param file    - the file that was deleted
+     * @param library - the root of the tree the file was in, which is never deleted
+     */
+    static void pruneEmptyDirectories(Path file, Path library) {
+        Path root = library.toAbsolutePath().normalize();
+        Path directory = file.toAbsolutePath().normalize().getParent();
+        while (directory != null && directory.startsWith(root) && !directory.equals(root)) {
+            try {
+                Files.delete(directory);
+            } catch (NoSuchFileException e) {
+                LOGGER.debug("Already removed: " + directory);
+            } catch (DirectoryNotEmptyException e) {
+                return;
+            } catch (IOException e) {
+                LOGGER.error("Couldn't remove empty directory " + directory + ": ", e);
                 return;
-            } else {
-                if (file.isDirectory()) {
-                    clearFiles(Objects.requireNonNull(file.listFiles()));
-                }
-                if (file.length() == 0 && !file.getAbsolutePath().endsWith(".json")) {
-                    file.delete();
-                }
             }
+            directory = directory.getParent();
         }
     }
 
@@ -234,7 +941,23 @@ final class LocalDocumentProvider implements DocumentProvider {
      */
     @Override
     public Flux<Book> findBook(String title) {
-        return jsonBooks.filter(book -> title.contentEquals(book.getTitle()));
+        return Flux.fromIterable(lookup(titleIndex, title));
+    }
+
+    /**
+     * Finds books by title prefix, allowing for typos, using the title index kept with the catalog.
+     *
+     * @param query - what the user has typed so far
+     * @param limit - the most books to return
+     * @return Flux of the matching books, best matches first
+     */
+    @Override
+    public Flux<Book> searchTitles(String query, int limit) {
+        return Flux.defer(() -> {
+            synchronized (catalog) {
+                return Flux.fromIterable(titleSearch.search(query, limit));
+            }
+        });
     }
 
     /**
@@ -245,7 +968,95 @@ final class LocalDocumentProvider implements DocumentProvider {
      */
     @Override
     public Flux<Book> findBook(Author author) {
-        return jsonBooks.filter(book -> author.getFirstName().contentEquals(book.getAuthor().getFirstName())
-            && book.getAuthor().getLastName().contentEquals(author.getLastName()));
+        return Flux.fromIterable(lookup(authorIndex, authorKey(author)));
+    }
+
+    /**
+     * Returns the books stored under the key. The list is never changed, so later saves or deletes don't affect it.
+     *
+     * @param index - either the title or author index
+     * @param key   - the key to look up
+     * @return List of the matching books
+     */
+    private static List<Book> lookup(Map<String, List<Book>> index, String key) {
+        return index.getOrDefault(key, Collections.emptyList());
+    }
+
+    /**
+     * Stops watching the JSON directory, if the provider was created with watching turned on, and saves the catalog
+     * snapshot if the catalog changed since it was loaded.
+     */
+    void closeStorage() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                LOGGER.error("Error closing the directory watcher: ", e);
+            }
+        }
+        synchronized (catalog) {
+            if (snapshotDirty && !pathListing) {
+                snapshot.write(directoryTimes, catalog);
+                snapshotDirty = false;
+            }
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing the journal: ", e);
+        }
+    }
+
+    /**
+     * Applies the changes found by the {@link LocalLibraryWatcher} to the catalog.
+     */
+    private final class CatalogSync implements LocalLibraryWatcher.Listener {
+        @Override
+        public void fileChanged(File file) {
+            Book book = SERIALIZER.fromJSONtoBook(file);
+            if (book == null) {
+                // Most likely still being written; the next modify event will pick it up.
+                return;
+            }
+            synchronized (catalog) {
+                addToCatalog(file, book);
+                catalogChanged(file);
+            }
+        }
+
+        @Override
+        public void fileDeleted(File file) {
+            String directory = file.getPath() + File.separator;
+            synchronized (catalog) {
+                List<File> removed = catalog.keySet().stream()
+                    .filter(key -> key.equals(file) || key.getPath().startsWith(directory))
+                    .collect(Collectors.toList());
+                removed.forEach(LocalDocumentProvider.this::removeFromCatalog);
+                catalogChanged(file);
+            }
+        }
+
+        @Override
+        public void rescan() {
+            LOGGER.info("Lost track of changes in the JSON directory, reloading the catalog.");
+            synchronized (catalog) {
+                clearCatalog();
+                initializeBooks();
+                invalidateSnapshot();
+            }
+        }
+    }
+
+    /**
+     * The books and directory times read from one entry of lib/jsonFiles.
+     */
+    private static final class LoadedDirectory {
+        private final Path directory;
+        private final Map<String, Long> directoryTimes = new LinkedHashMap<>();
+        private final Map<File, Book> books = new TreeMap<>();
+
+        LoadedDirectory(Path directory) {
+            this.directory = directory;
+        }
     }
 }
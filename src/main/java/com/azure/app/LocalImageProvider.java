@@ -6,6 +6,7 @@ package com.azure.app;
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.imageio.ImageIO;
@@ -18,93 +19,106 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+import static com.azure.app.Constants.BULK_CONCURRENCY;
 import static com.azure.app.Constants.IMAGE_PATH;
+import static com.azure.app.Constants.LOCAL_IO;
 
 final class LocalImageProvider implements ImageProvider {
     private final Set<String> supportedImageFormats;
-    private List<File> jsonFiles;
+    private final Map<String, Set<File>> covers = new ConcurrentHashMap<>();
     private String root;
-    private final OptionChecker optionChecker = new OptionChecker();
+    private final LibraryLayout layout;
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalImageProvider.class);
 
     LocalImageProvider(String root) {
+        this(root, LibraryLayout.FLAT);
+    }
+
+    /**
+     * Constructor for LocalImageProvider
+     *
+     * @param root   - the directory the library is stored in
+     * @param layout - where new covers are written; it should match the document provider's layout
+     */
+    LocalImageProvider(String root, LibraryLayout layout) {
         this.root = root;
+        this.layout = layout;
         supportedImageFormats = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("gif", "png", "jpg")));
         File directory = new File(Paths.get(root, IMAGE_PATH).toString());
         if (!directory.exists() && !directory.mkdirs()) {
             LOGGER.error("Couldn't create non-existent JSON directory: " + directory.getAbsolutePath());
         }
-        jsonFiles = retrieveJsonFiles();
+        indexCovers();
     }
 
     /**
-     * Deletes the old book if the new book has a the same title and author
+     * Deletes the covers already saved for a book with the same title and author, so a cover with another extension
+     * doesn't stay behind when it's overwritten. The covers are looked up by key, so saves of different books don't
+     * wait on each other.
      *
-     * @param bookToCompare
+     * @param bookToCompare - Book whose cover is about to be saved
+     * @param source        - the image being saved, which is kept even if it's one of the old covers
      */
-    private void duplicateImage(Book bookToCompare, File newImage) {
-        //Checks to see if the book has a duplicate, if so it'll delete it so it can be overwritten
-        jsonFiles.removeIf(x -> {
-            boolean result = optionChecker.checkFile(x, bookToCompare);
-            if (result) {
-                x.delete();
-                Book imageToSave = new Book(bookToCompare.getTitle(), bookToCompare.getAuthor(),
-                    newImage.toURI());
-                saveImage(imageToSave);
-                return true;
+    private void duplicateImage(Book bookToCompare, File source) {
+        Set<File> saved = covers.remove(coverKey(bookToCompare));
+        if (saved == null) {
+            return;
+        }
+        for (File cover : saved) {
+            if (!cover.equals(source.getAbsoluteFile()) && !cover.delete() && cover.exists()) {
+                LOGGER.warn("Old cover wasn't deleted: " + cover.getAbsolutePath());
             }
-            return false;
-        });
+        }
     }
 
     /**
-     * Grabs all the JSON files
-     *
-     * @return List of all the JSON files
+     * Indexes the covers already in the library by key, in either layout.
      */
-    private List<File> retrieveJsonFiles() {
-        try (Stream<Path> walk = Files.walk(Paths.get(IMAGE_PATH))) {
-            return walk.map(Path::toFile).filter(f -> f.getName().endsWith("gif") || f.getName().endsWith("png")
-                || f.getName().endsWith("jpg"))
-                .collect(Collectors.toList());
+    private void indexCovers() {
+        try (Stream<Path> walk = Files.walk(Paths.get(root, IMAGE_PATH))) {
+            walk.map(Path::toFile)
+                .filter(f -> supportedImageFormats.contains(FilenameUtils.getExtension(f.getName())))
+                .forEach(this::addCover);
         } catch (IOException e) {
             LOGGER.error("Exception acquiring image file.", e);
-            return Collections.emptyList();
         }
     }
 
-    /**
-     * Clears out any empty directories that might have been leftover from when the JSON file was deleted.
-     */
-    private void deleteEmptyDirectories() {
-        File[] imageFiles = new File(IMAGE_PATH).listFiles();
-        clearFiles(imageFiles);
+    private void addCover(File cover) {
+        File firstName = cover.getAbsoluteFile().getParentFile();
+        File lastName = firstName.getParentFile();
+        if (lastName != null) {
+            covers.computeIfAbsent(coverKey(lastName.getName(), firstName.getName(),
+                FilenameUtils.getBaseName(cover.getName())), key -> ConcurrentHashMap.newKeySet())
+                .add(cover.getAbsoluteFile());
+        }
+    }
+
+    private static String coverKey(Book book) {
+        return coverKey(book.getAuthor().getLastName(), book.getAuthor().getFirstName(), safeTitle(book));
     }
 
     /**
-     * Assists the emptyDirectory method by traversing through the files. When it finds an empty directory without a
-     * JSON file, it deletes that file.
+     * Builds the key covers are indexed by. Directories don't keep a trailing period, so the names are compared
+     * without one.
      *
-     * @param files - the folder containing the other files in the library.
+     * @param lastName  - the author's last name
+     * @param firstName - the author's first name
+     * @param fileTitle - the cover's file name without its extension
+     * @return the key
      */
-    private void clearFiles(File[] files) {
-        for (File file : files) {
-            if (file == null) {
-                return;
-            } else {
-                if (file.isDirectory()) {
-                    clearFiles(file.listFiles());
-                }
-                if (file.length() == 0 && !file.getAbsolutePath().endsWith(".json")) {
-                    file.delete();
-                }
-            }
-        }
+    private static String coverKey(String lastName, String firstName, String fileTitle) {
+        return Author.withoutTrailingPeriod(lastName) + "/" + Author.withoutTrailingPeriod(firstName) + "/"
+            + fileTitle;
+    }
+
+    private static String safeTitle(Book book) {
+        return book.getTitle().replace(' ', '-');
     }
 
     /**
@@ -121,39 +135,53 @@ final class LocalImageProvider implements ImageProvider {
 
     @Override
     public Mono<Void> saveImage(Book book) {
-        File imagePath = new File(book.getCover());
-        final Path fullImagePath = Paths.get(root, IMAGE_PATH, book.getAuthor().getLastName(),
-            book.getAuthor().getFirstName());
-        File imageFile = fullImagePath.toFile();
-        if (!imageFile.exists() && !imageFile.mkdirs()) {
-            LOGGER.error("Couldn't create directories for: " + imageFile.getAbsolutePath());
-        }
-        duplicateImage(book, imagePath);
-        String extension = FilenameUtils.getExtension(imagePath.getName());
-        if (!supportedImageFormats.contains(extension)) {
-            LOGGER.error("Error. Wrong image format.");
-            return Mono.error(new IllegalArgumentException("Wrong image format"));
-        }
-        try {
-            BufferedImage bufferedImage = ImageIO.read(imagePath);
-            String safeTitle = book.getTitle().replace(' ', '-');
-            File image = new File(Paths.get(imageFile.getPath(), safeTitle + "." + extension).toString());
-            if (ImageIO.write(bufferedImage, extension, image)) {
-                return Mono.empty().then();
+        return Mono.<Void>defer(() -> {
+            File imagePath = new File(book.getCover());
+            File imageFile = layout.authorDirectory(Paths.get(root, IMAGE_PATH), book.getAuthor()).toFile();
+            if (!imageFile.exists() && !imageFile.mkdirs()) {
+                LOGGER.error("Couldn't create directories for: " + imageFile.getAbsolutePath());
             }
-        } catch (IOException ex) {
-            LOGGER.error("Error saving image: ", ex);
-            return Mono.error(ex);
-        }
-        return Mono.error(new IllegalArgumentException("Error saving cover image"));
+            String extension = FilenameUtils.getExtension(imagePath.getName());
+            if (!supportedImageFormats.contains(extension)) {
+                LOGGER.error("Error. Wrong image format.");
+                return Mono.error(new IllegalArgumentException("Wrong image format"));
+            }
+            try {
+                BufferedImage bufferedImage = ImageIO.read(imagePath);
+                duplicateImage(book, imagePath);
+                File image = new File(Paths.get(imageFile.getPath(), safeTitle(book) + "." + extension).toString());
+                if (ImageIO.write(bufferedImage, extension, image)) {
+                    addCover(image);
+                    return Mono.empty().then();
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Error saving image: ", ex);
+                return Mono.error(ex);
+            }
+            return Mono.error(new IllegalArgumentException("Error saving cover image"));
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Saves the covers with up to BULK_CONCURRENCY images being decoded and written at once. Each save already runs
+     * on the local I/O scheduler.
+     *
+     * @param books - Flux of the Book objects whose covers are saved
+     * @return Flux of one SaveResult per book, in the same order
+     */
+    @Override
+    public Flux<SaveResult> saveImages(Flux<Book> books) {
+        return books.flatMapSequential(book -> saveImage(book)
+            .thenReturn(SaveResult.success(book))
+            .onErrorResume(error -> Mono.just(SaveResult.failure(book, error))), BULK_CONCURRENCY);
     }
 
     @Override
     public Mono<Void> editImage(Book oldBook, Book newBook, boolean saveCover) {
         if (saveCover) {
             File image = Paths.get(System.getProperty("user.dir"), oldBook.getCover().getPath()).toFile();
-            newBook = new Book(newBook.getTitle(), newBook.getAuthor(), image.toURI());
-            return saveImage(newBook).then(deleteImage(oldBook));
+            Book book = new Book(newBook.getTitle(), newBook.getAuthor(), image.toURI());
+            return saveImage(book).then(deleteImage(oldBook));
         } else { // Overwriting/changing cover
             return saveImage(newBook);
         }
@@ -161,13 +189,18 @@ final class LocalImageProvider implements ImageProvider {
 
     @Override
     public Mono<Void> deleteImage(Book book) {
-        return Mono.just(Paths.get(System.getProperty("user.dir"), book.getCover().getPath()).toFile().delete()).map(result -> {
-            if (!result.booleanValue()) {
-                return Mono.error(new IllegalStateException("Image wasn't deleted."));
+        return Mono.fromRunnable(() -> {
+            File image = Paths.get(System.getProperty("user.dir"), book.getCover().getPath()).toFile();
+            Set<File> saved = covers.get(coverKey(book));
+            if (saved != null) {
+                saved.remove(image.getAbsoluteFile());
+            }
+            if (image.delete()) {
+                LocalDocumentProvider.pruneEmptyDirectories(image.toPath(),
+                    Paths.get(System.getProperty("user.dir"), IMAGE_PATH));
             } else {
-                deleteEmptyDirectories();
-                return Mono.empty();
+                LOGGER.warn("Image wasn't deleted: " + image.getAbsolutePath());
             }
-        }).then();
+        }).subscribeOn(LOCAL_IO).then();
     }
 }
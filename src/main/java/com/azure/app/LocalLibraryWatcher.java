@@ -0,0 +1,209 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the lib/jsonFiles tree (the root, the last name and the first name directories, and in the sharded layout
+ * the shard directories in front of them) and reports the JSON files that were created, modified or deleted by other
+ * processes. Bursts of events are coalesced per path and only reported once the directory has been quiet for the
+ * debounce interval, or once the first of them is the maximum delay old, so a steady stream of writes is still
+ * reported as it goes.
+ */
+final class LocalLibraryWatcher implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalLibraryWatcher.class);
+    static final long DEBOUNCE_MILLIS = 200;
+    static final long MAX_DELAY_MILLIS = 2000;
+
+    private final Path jsonRoot;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Thread thread;
+
+    /**
+     * Receives the changes found by the watcher. Calls are made from the watcher's thread.
+     */
+    interface Listener {
+        /**
+         * A JSON file was created or modified.
+         *
+         * @param file - the JSON file that changed
+         */
+        void fileChanged(File file);
+
+        /**
+         * A JSON file or a whole author directory was deleted.
+         *
+         * @param file - the file or directory that was removed
+         */
+        void fileDeleted(File file);
+
+        /**
+         * Events were lost, so the whole tree needs to be read again.
+         */
+        void rescan();
+    }
+
+    /**
+     * Creates the watcher and registers the existing directories. Call {@link #start()} to begin reporting changes.
+     *
+     * @param jsonRoot - the lib/jsonFiles directory
+     * @param listener - where the changes are reported
+     * @throws IOException if the watch service can't be created or the directories can't be registered
+     */
+    LocalLibraryWatcher(Path jsonRoot, Listener listener) throws IOException {
+        this.jsonRoot = jsonRoot;
+        this.listener = listener;
+        this.watchService = jsonRoot.getFileSystem().newWatchService();
+        registerTree(jsonRoot);
+        this.thread = new Thread(this::run, "local-library-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    /**
+     * Registers the directory and the directories below it, down to the first name level. The first name level is
+     * two levels further down under the shard directory.
+     *
+     * @param directory - the directory to start from
+     * @throws IOException if a directory can't be registered
+     */
+    private void registerTree(Path directory) throws IOException {
+        Path relative = jsonRoot.relativize(directory);
+        int level = directory.equals(jsonRoot) ? 0 : relative.getNameCount();
+        boolean sharded = level > 0 && relative.getName(0).toString().equals(LibraryLayout.SHARD_DIRECTORY);
+        int depth = (sharded ? 4 : 2) - level;
+        if (depth < 0) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(directory, depth)) {
+            for (Path path : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator) {
+                WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, path);
+            }
+        }
+        Path shards = jsonRoot.resolve(LibraryLayout.SHARD_DIRECTORY);
+        if (level == 0 && Files.isDirectory(shards)) {
+            registerTree(shards);
+        }
+    }
+
+    /**
+     * Waits for the first event, then keeps collecting until nothing has happened for the debounce interval or the
+     * maximum delay has passed since the first event.
+     */
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Map<Path, Boolean> pending = new LinkedHashMap<>();
+                boolean overflow = collect(watchService.take(), pending);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    WatchKey next = watchService.poll(Math.min(TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS),
+                        remaining), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    overflow |= collect(next, pending);
+                }
+                if (overflow) {
+                    listener.rescan();
+                } else {
+                    pending.forEach((path, exists) -> {
+                        if (exists) {
+                            listener.fileChanged(path.toFile());
+                        } else {
+                            listener.fileDeleted(path.toFile());
+                        }
+                    });
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("Stopped watching " + jsonRoot);
+        }
+    }
+
+    /**
+     * Drains the events from the key into the pending changes. The latest event for a path wins.
+     *
+     * @param key     - the key that was signalled
+     * @param pending - map of path to true if the path was created or modified, false if it was deleted
+     * @return true if events were lost and the tree has to be rescanned
+     */
+    private boolean collect(WatchKey key, Map<Path, Boolean> pending) {
+        boolean overflow = false;
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                overflow = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(path);
+                pending.put(path, false);
+            } else if (Files.isDirectory(path)) {
+                overflow |= registerNewDirectory(path, pending);
+            } else if (path.toString().endsWith(".json")) {
+                pending.remove(path);
+                pending.put(path, true);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    /**
+     * Starts watching a directory that was just created and reports the JSON files already inside it, since they
+     * may have been written before the directory was registered.
+     *
+     * @param directory - the new directory
+     * @param pending   - the pending changes
+     * @return true if the directory couldn't be registered and the tree has to be rescanned
+     */
+    private boolean registerNewDirectory(Path directory, Map<Path, Boolean> pending) {
+        try {
+            registerTree(directory);
+            try (Stream<Path> walk = Files.walk(directory)) {
+                walk.filter(path -> path.toString().endsWith(".json")).forEach(path -> pending.put(path, true));
+            }
+            return false;
+        } catch (IOException e) {
+            LOGGER.error("Couldn't watch new directory " + directory + ": ", e);
+            return true;
+        }
+    }
+}
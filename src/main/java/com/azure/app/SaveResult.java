@@ -0,0 +1,60 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+/**
+ * The outcome of saving one book in a bulk save.
+ */
+final class SaveResult {
+    private final Book book;
+    private final Throwable error;
+
+    private SaveResult(Book book, Throwable error) {
+        this.book = book;
+        this.error = error;
+    }
+
+    /**
+     * Records that the book was saved.
+     *
+     * @param book - the Book object that was passed in
+     * @return the result
+     */
+    static SaveResult success(Book book) {
+        return new SaveResult(book, null);
+    }
+
+    /**
+     * Records that the book couldn't be saved.
+     *
+     * @param book  - the Book object that was passed in
+     * @param error - why it wasn't saved
+     * @return the result
+     */
+    static SaveResult failure(Book book, Throwable error) {
+        return new SaveResult(book, error);
+    }
+
+    /**
+     * Returns the book as it was passed in, with its original cover.
+     *
+     * @return the Book object
+     */
+    Book getBook() {
+        return book;
+    }
+
+    /**
+     * Returns why the book wasn't saved.
+     *
+     * @return the error, or null if the book was saved
+     */
+    Throwable getError() {
+        return error;
+    }
+
+    boolean isSuccessful() {
+        return error == null;
+    }
+}
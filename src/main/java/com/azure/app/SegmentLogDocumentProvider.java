@@ -0,0 +1,816 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static com.azure.app.Constants.BULK_BATCH_SIZE;
+import static com.azure.app.Constants.LOCAL_IO;
+
+/**
+ * Stores books as records appended to segment files under lib/segments instead of one JSON file per book.
+ *
+ * <p>Each segment starts with a header holding the id of the oldest segment it covers. Records are laid out as
+ * {@code [int length][byte type][payload][int crc]}, where a PUT payload is the book encoded by the provider's
+ * {@link BookCodec} and a DELETE payload (tombstone) is the book's key. A type with the BATCH_CONTINUES bit set
+ * belongs to a batch that ends with the next record without it; a batch is only replayed once its last record is
+ * intact, so an edit's new book and the old book's tombstone take effect together. The newest record for a key
+ * wins; an in-memory index maps each live key to the offset of its record. Sealed segments are compacted in the
+ * background into a single segment, which replaces the newest of them and supersedes the rest.</p>
+ */
+final class SegmentLogDocumentProvider implements DocumentProvider {
+    static final String SEGMENT_PATH = Paths.get("lib", "segments").toString();
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentLogDocumentProvider.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{10})\\.log");
+    private static final int MAGIC = 0x424F4F4B;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_OVERHEAD = 9;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte BATCH_CONTINUES = (byte) 0x80;
+    private static final long DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final BookCodec codec;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+    private final Scheduler compactor = Schedulers.newSingle("segment-compaction", true);
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final Object compactionLock = new Object();
+    private boolean closed;
+    private Segment active;
+    private long garbageBytes;
+
+    SegmentLogDocumentProvider(String root) {
+        this(root, DEFAULT_SEGMENT_BYTES);
+    }
+
+    SegmentLogDocumentProvider(String root, BookCodec codec) {
+        this(root, DEFAULT_SEGMENT_BYTES, codec);
+    }
+
+    /**
+     * Constructor for SegmentLogDocumentProvider. Replays the existing segments to rebuild the index.
+     *
+     * @param root         - the directory the library is stored in
+     * @param segmentBytes - the size at which the active segment is sealed and a new one is started
+     */
+    SegmentLogDocumentProvider(String root, long segmentBytes) {
+        this(root, segmentBytes, BookCodec.JSON);
+    }
+
+    /**
+     * Constructor for SegmentLogDocumentProvider. Replays the existing segments to rebuild the index. Records are
+     * read whichever codec wrote them, so the codec can be changed on an existing log.
+     *
+     * @param root         - the directory the library is stored in
+     * @param segmentBytes - the size at which the active segment is sealed and a new one is started
+     * @param codec        - how new PUT payloads are encoded
+     */
+    SegmentLogDocumentProvider(String root, long segmentBytes, BookCodec codec) {
+        this.directory = Paths.get(root, SEGMENT_PATH);
+        this.segmentBytes = segmentBytes;
+        this.codec = codec;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            LOGGER.error("Couldn't open the segment log in " + directory + ": ", e);
+            throw new IllegalStateException("Couldn't open the segment log.", e);
+        }
+    }
+
+    /**
+     * Returns the Flux of Book objects
+     *
+     * @return Flux<Book> the flux with all the book information </Book>
+     */
+    @Override
+    public Flux<Book> getBooks() {
+        return readMatching(entry -> true);
+    }
+
+    /**
+     * Appends the book to the log, replacing any book with the same title and author.
+     *
+     * @param title  - String containing the title of the book
+     * @param author - Author object of the book
+     * @param path   - File containing the cover image of the book
+     * @return {@link Mono} that completes once the record is durable
+     */
+    @Override
+    public Mono<Void> saveBook(String title, Author author, URI path) {
+        return Mono.<Void>defer(() -> {
+            URI relative;
+            try {
+                relative = LocalDocumentProvider.relativeCover(title, author, path);
+            } catch (UnsupportedEncodingException e) {
+                LOGGER.error("Error encoding: ", e);
+                return Mono.error(e);
+            }
+            Book book = new Book(title, AuthorPool.canonical(author), relative);
+            if (!book.isValid()) {
+                return Mono.error(new IllegalStateException("Unsuccessful save"));
+            }
+            try {
+                put(book);
+            } catch (IOException e) {
+                LOGGER.error("Error appending book: ", e);
+                return Mono.error(e);
+            }
+            scheduleCompaction();
+            return Mono.empty();
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Appends the books in batches of BULK_BATCH_SIZE, forcing the log once per batch instead of once per book.
+     *
+     * @param books - Flux of the Book objects to save
+     * @return Flux of one SaveResult per book, in the same order
+     */
+    @Override
+    public Flux<SaveResult> saveBooks(Flux<Book> books) {
+        return books.buffer(BULK_BATCH_SIZE).concatMap(batch -> Flux.defer(() -> {
+            SaveResult[] results = new SaveResult[batch.size()];
+            List<Integer> pending = new ArrayList<>();
+            List<Book> saved = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Book original = batch.get(i);
+                try {
+                    Book book = new Book(original.getTitle(), AuthorPool.canonical(original.getAuthor()),
+                        LocalDocumentProvider.relativeCover(original.getTitle(), original.getAuthor(),
+                            original.getCover()));
+                    if (book.isValid()) {
+                        pending.add(i);
+                        saved.add(book);
+                    } else {
+                        results[i] = SaveResult.failure(original, new IllegalStateException("Unsuccessful save"));
+                    }
+                } catch (UnsupportedEncodingException e) {
+                    results[i] = SaveResult.failure(original, e);
+                }
+            }
+            try {
+                putAll(saved);
+                pending.forEach(i -> results[i] = SaveResult.success(batch.get(i)));
+            } catch (IOException e) {
+                LOGGER.error("Error appending books: ", e);
+                pending.forEach(i -> results[i] = SaveResult.failure(batch.get(i), e));
+            }
+            scheduleCompaction();
+            return Flux.fromArray(results);
+        }).subscribeOn(LOCAL_IO), 1);
+    }
+
+    /**
+     * Overwrites the old book with the contents in the new book
+     *
+     * @param oldBook   - Book object that will be changed
+     * @param newBook   - Book object with the new information to change to
+     * @param saveCover - determines whether or not the user wants to keep the same cover
+     * @return {@Link Mono}
+     */
+    @Override
+    public Mono<Void> editBook(Book oldBook, Book newBook, boolean saveCover) {
+        if (!saveCover) {
+            return saveBook(newBook.getTitle(), newBook.getAuthor(), newBook.getCover());
+        }
+        return Mono.<Void>defer(() -> {
+            File image = Paths.get(System.getProperty("user.dir"), oldBook.getCover().getPath()).toFile();
+            Book book;
+            try {
+                book = new Book(newBook.getTitle(), AuthorPool.canonical(newBook.getAuthor()),
+                    LocalDocumentProvider.relativeCover(newBook.getTitle(), newBook.getAuthor(), image.toURI()));
+            } catch (UnsupportedEncodingException e) {
+                LOGGER.error("Error encoding: ", e);
+                return Mono.error(e);
+            }
+            if (!book.isValid()) {
+                return Mono.error(new IllegalStateException("Unsuccessful save"));
+            }
+            try {
+                if (!replace(book, key(oldBook))) {
+                    return Mono.error(new IllegalStateException("There is no such book."));
+                }
+            } catch (IOException e) {
+                LOGGER.error("Error appending edit: ", e);
+                return Mono.error(e);
+            }
+            scheduleCompaction();
+            return Mono.empty();
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Appends a tombstone for the book.
+     *
+     * @param book - Book that'll be deleted
+     * @return {@link Mono} that errors if there was no such book
+     */
+    @Override
+    public Mono<Void> deleteBook(Book book) {
+        return Mono.<Void>defer(() -> {
+            try {
+                if (!delete(key(book))) {
+                    return Mono.error(new IllegalStateException("There is no such book."));
+                }
+            } catch (IOException e) {
+                LOGGER.error("Error appending tombstone: ", e);
+                return Mono.error(e);
+            }
+            scheduleCompaction();
+            return Mono.empty();
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    /**
+     * Filters out the book based on the specified title.
+     *
+     * @param title - String of the book title the user is looking for
+     * @return - Flux of Book objects with that title
+     */
+    @Override
+    public Flux<Book> findBook(String title) {
+        return readMatching(entry -> entry.title.contentEquals(title));
+    }
+
+    /**
+     * Filters out the books based on the specified author.
+     *
+     * @param author - Contains the name of the author the user is looking for
+     * @return - Flux of Book objects by that author
+     */
+    @Override
+    public Flux<Book> findBook(Author author) {
+        return readMatching(entry -> entry.author.getLastName().contentEquals(author.getLastName())
+            && entry.author.getFirstName().contentEquals(author.getFirstName()));
+    }
+
+    /**
+     * Stops the compactor and closes every segment.
+     */
+    void closeStorage() {
+        synchronized (compactionLock) {
+            compactor.dispose();
+            synchronized (this) {
+                closed = true;
+                for (Segment segment : segments.values()) {
+                    try {
+                        segment.channel.close();
+                    } catch (IOException e) {
+                        LOGGER.error("Error closing segment " + segment.id + ": ", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the key a book is stored under.
+     *
+     * @param book - the Book object
+     * @return String made up of the last name, first name and title
+     */
+    private static String key(Book book) {
+        return book.getAuthor().getLastName() + "/" + book.getAuthor().getFirstName() + "/" + book.getTitle();
+    }
+
+    /**
+     * Reads the books whose index entries match, without touching the disk for the ones that don't.
+     *
+     * @param filter - which entries to read
+     * @return Flux of the matching books
+     */
+    private Flux<Book> readMatching(Predicate<Entry> filter) {
+        return Flux.defer(() -> {
+            List<Book> books = new ArrayList<>();
+            synchronized (this) {
+                try {
+                    for (Entry entry : index.values()) {
+                        if (filter.test(entry)) {
+                            books.add(readBook(entry));
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.error("Error reading the segment log: ", e);
+                    return Flux.error(e);
+                }
+            }
+            return Flux.fromIterable(books);
+        }).subscribeOn(LOCAL_IO);
+    }
+
+    private synchronized void put(Book book) throws IOException {
+        write(book);
+        active.channel.force(false);
+    }
+
+    /**
+     * Appends every book and forces the log once at the end.
+     *
+     * @param books - the Book objects to append
+     * @throws IOException if a record couldn't be written
+     */
+    private synchronized void putAll(List<Book> books) throws IOException {
+        for (Book book : books) {
+            write(book);
+        }
+        active.channel.force(false);
+    }
+
+    private void write(Book book) throws IOException {
+        byte[] payload = codec.encode(book);
+        long offset = write(PUT, payload);
+        Entry entry = new Entry(book.getTitle(), book.getAuthor(), active, offset, payload.length);
+        retire(index.put(key(book), entry));
+    }
+
+    /**
+     * Appends the book and, if its key changed, a tombstone for the old key as one batch, forced once. Both records
+     * go into the same segment, and if either can't be written the batch is cut off again.
+     *
+     * @param book   - the new version of the book
+     * @param oldKey - the key the book was stored under
+     * @return false if there's no book under the old key
+     * @throws IOException if the batch couldn't be written
+     */
+    private synchronized boolean replace(Book book, String oldKey) throws IOException {
+        if (!index.containsKey(oldKey)) {
+            return false;
+        }
+        if (oldKey.equals(key(book))) {
+            put(book);
+            return true;
+        }
+        byte[] payload = codec.encode(book);
+        byte[] tombstone = oldKey.getBytes(StandardCharsets.UTF_8);
+        rollOverIfFull();
+        long start = active.size;
+        try {
+            writeRecord(encode((byte) (PUT | BATCH_CONTINUES), payload));
+            writeRecord(encode(DELETE, tombstone));
+            active.channel.force(false);
+        } catch (IOException e) {
+            active.channel.truncate(start);
+            active.size = start;
+            throw e;
+        }
+        retire(index.remove(oldKey));
+        active.garbage += RECORD_OVERHEAD + tombstone.length;
+        retire(index.put(key(book), new Entry(book.getTitle(), book.getAuthor(), active, start, payload.length)));
+        return true;
+    }
+
+    private synchronized boolean delete(String key) throws IOException {
+        if (!index.containsKey(key)) {
+            return false;
+        }
+        byte[] payload = key.getBytes(StandardCharsets.UTF_8);
+        append(DELETE, payload);
+        retire(index.remove(key));
+        active.garbage += RECORD_OVERHEAD + payload.length;
+        return true;
+    }
+
+    /**
+     * Counts the record that was superseded as garbage in its segment.
+     *
+     * @param previous - the index entry that was replaced, or null
+     */
+    private void retire(Entry previous) {
+        if (previous != null) {
+            previous.segment.garbage += RECORD_OVERHEAD + previous.length;
+            if (previous.segment != active) {
+                garbageBytes += RECORD_OVERHEAD + previous.length;
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the active segment and forces it to disk, rolling over to a new segment when full.
+     *
+     * @param type    - PUT or DELETE
+     * @param payload - the record's payload
+     * @return the offset the record was written at
+     * @throws IOException if the record couldn't be written
+     */
+    private long append(byte type, byte[] payload) throws IOException {
+        long offset = write(type, payload);
+        active.channel.force(false);
+        return offset;
+    }
+
+    /**
+     * Appends a record to the active segment without forcing it, rolling over to a new segment when full. A segment
+     * is forced before it's sealed, so only the active segment can hold unforced records.
+     *
+     * @param type    - PUT or DELETE
+     * @param payload - the record's payload
+     * @return the offset the record was written at
+     * @throws IOException if the record couldn't be written
+     */
+    private long write(byte type, byte[] payload) throws IOException {
+        rollOverIfFull();
+        return writeRecord(encode(type, payload));
+    }
+
+    /**
+     * Seals the active segment and starts a new one if the active segment is full.
+     *
+     * @throws IOException if the new segment can't be created
+     */
+    private void rollOverIfFull() throws IOException {
+        if (active.size >= segmentBytes) {
+            active.channel.force(false);
+            garbageBytes += active.garbage;
+            active = openSegment(active.id + 1, active.id + 1);
+        }
+    }
+
+    private long writeRecord(ByteBuffer record) throws IOException {
+        long offset = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.size += record.limit();
+        return offset;
+    }
+
+    private static ByteBuffer encode(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        record.putInt(payload.length).put(type).put(payload).putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private Book readBook(Entry entry) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(entry.length);
+        readFully(entry.segment.channel, payload, entry.offset + 5, entry.segment.id);
+        return BookCodec.decodeAny(payload.array(), 0, entry.length);
+    }
+
+    /**
+     * Fills the buffer from the segment, starting at the position. A single read may return fewer bytes than asked
+     * for, so it reads until the buffer is full.
+     *
+     * @param channel  - the segment's channel
+     * @param buffer   - the buffer to fill, from its start
+     * @param position - where in the segment to start reading
+     * @param id       - the segment's id, for the error
+     * @throws IOException if the segment ends before the buffer is full, which means it's corrupt
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, long id)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Segment " + id + " is corrupt: it ends before offset "
+                    + (position + buffer.limit()));
+            }
+        }
+    }
+
+    /**
+     * Opens the segments in id order, drops the ones superseded by a compacted segment and replays the rest. A torn
+     * record at the end of the newest segment is cut off.
+     *
+     * @throws IOException if a segment can't be read
+     */
+    private void recover() throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path path : list.collect(Collectors.toList())) {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    found.put(Long.parseLong(matcher.group(1)), path);
+                } else if (path.getFileName().toString().endsWith(".compacting")) {
+                    Files.delete(path);
+                }
+            }
+        }
+        for (Long id : found.keySet()) {
+            openSegment(id, id);
+        }
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            // A compacted segment supersedes every older segment it covers; they may survive a crash mid-compaction.
+            for (Long superseded : new ArrayList<>(segments.subMap(segment.base, segment.id).keySet())) {
+                segments.remove(superseded).channel.close();
+                Files.deleteIfExists(segmentPath(superseded));
+            }
+        }
+        for (Segment segment : segments.values()) {
+            replay(segment, segment.id == segments.lastKey());
+        }
+        if (segments.isEmpty()) {
+            active = openSegment(1, 1);
+        } else {
+            active = segments.lastEntry().getValue();
+            garbageBytes = segments.headMap(active.id).values().stream().mapToLong(s -> s.garbage).sum();
+        }
+    }
+
+    private void replay(Segment segment, boolean newest) throws IOException {
+        long offset = HEADER_SIZE;
+        long batchStart = offset;
+        List<PendingRecord> batch = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(5);
+        while (offset + 5 <= segment.size) {
+            header.clear();
+            readFully(segment.channel, header, offset, segment.id);
+            header.flip();
+            int length = header.getInt();
+            byte type = header.get();
+            if (length < 0 || offset + RECORD_OVERHEAD + length > segment.size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length + 4);
+            readFully(segment.channel, body, offset + 5, segment.id);
+            body.flip();
+            byte[] payload = new byte[length];
+            body.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload);
+            if (body.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            batch.add(new PendingRecord((byte) (type & ~BATCH_CONTINUES), payload, offset));
+            offset += RECORD_OVERHEAD + length;
+            if ((type & BATCH_CONTINUES) == 0) {
+                for (PendingRecord record : batch) {
+                    applyRecord(segment, record);
+                }
+                batch.clear();
+                batchStart = offset;
+            }
+        }
+        // A batch whose last record is missing is dropped as a whole, like a torn record.
+        offset = batchStart;
+        if (offset < segment.size) {
+            if (!newest) {
+                throw new IOException("Segment " + segment.id + " is corrupt at offset " + offset);
+            }
+            LOGGER.warn("Truncating torn record at offset " + offset + " of segment " + segment.id);
+            segment.channel.truncate(offset);
+            segment.size = offset;
+        }
+    }
+
+    private void applyRecord(Segment segment, PendingRecord record) throws IOException {
+        int length = record.payload.length;
+        if (record.type == PUT) {
+            Book book = BookCodec.decodeAny(record.payload, 0, length);
+            retire(index.put(key(book), new Entry(book.getTitle(), book.getAuthor(), segment, record.offset,
+                length)));
+        } else {
+            retire(index.remove(new String(record.payload, StandardCharsets.UTF_8)));
+            segment.garbage += RECORD_OVERHEAD + length;
+        }
+    }
+
+    /**
+     * Opens a segment, creating it with the given base when it doesn't exist yet.
+     *
+     * @param id   - the segment id
+     * @param base - the oldest segment id covered when creating it, ignored when the segment exists
+     * @return the opened segment
+     * @throws IOException if the segment can't be opened
+     */
+    private Segment openSegment(long id, long base) throws IOException {
+        Path path = segmentPath(id);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            writeHeader(channel, base);
+            size = HEADER_SIZE;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            try {
+                readFully(channel, header, 0, id);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException(path + " is not a segment file.");
+            }
+            base = header.getLong();
+        }
+        Segment segment = new Segment(id, base, channel, size);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static void writeHeader(FileChannel channel, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(base).flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("segment-%010d.log", id));
+    }
+
+    /**
+     * Starts a compaction on the background scheduler once at least half of the sealed segments' bytes are garbage.
+     */
+    private void scheduleCompaction() {
+        synchronized (this) {
+            long sealedBytes = segments.headMap(active.id).values().stream().mapToLong(s -> s.size).sum();
+            if (sealedBytes == 0 || garbageBytes * 2 < sealedBytes) {
+                return;
+            }
+        }
+        if (compactionScheduled.compareAndSet(false, true)) {
+            compactor.schedule(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    LOGGER.error("Segment compaction failed: ", e);
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies the live records of every sealed segment into one segment that replaces the newest of them. Sealed
+     * segments never change, so the copy runs without holding the lock; only the swap does.
+     *
+     * @throws IOException if the compacted segment can't be written
+     */
+    void compact() throws IOException {
+        synchronized (compactionLock) {
+            compactSealedSegments();
+        }
+    }
+
+    private void compactSealedSegments() throws IOException {
+        long target;
+        long base;
+        List<Map.Entry<String, Entry>> live = new ArrayList<>();
+        synchronized (this) {
+            if (closed || segments.firstKey() == active.id) {
+                return;
+            }
+            target = segments.lowerKey(active.id);
+            base = segments.firstEntry().getValue().base;
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                if (entry.getValue().segment.id <= target) {
+                    live.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        Path temporary = directory.resolve(segmentPath(target).getFileName() + ".compacting");
+        Map<String, Long> offsets = new LinkedHashMap<>();
+        long size;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            writeHeader(out, base);
+            size = HEADER_SIZE;
+            for (Map.Entry<String, Entry> entry : live) {
+                Entry old = entry.getValue();
+                ByteBuffer payload = ByteBuffer.allocate(old.length);
+                synchronized (this) {
+                    readFully(old.segment.channel, payload, old.offset + 5, old.segment.id);
+                }
+                // Copied on its own, a record that was part of a batch is written as a plain PUT.
+                ByteBuffer record = encode(PUT, payload.array());
+                offsets.put(entry.getKey(), size);
+                while (record.hasRemaining()) {
+                    size += out.write(record, size);
+                }
+            }
+            out.force(true);
+        }
+        synchronized (this) {
+            Segment replaced = segments.get(target);
+            replaced.channel.close();
+            Files.move(temporary, segmentPath(target), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+            FileChannel channel = FileChannel.open(segmentPath(target), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            Segment compacted = new Segment(target, base, channel, size);
+            for (Map.Entry<String, Entry> entry : live) {
+                Entry old = entry.getValue();
+                long offset = offsets.get(entry.getKey());
+                Entry current = index.get(entry.getKey());
+                if (current == old) {
+                    index.put(entry.getKey(), new Entry(old.title, old.author, compacted, offset, old.length));
+                } else {
+                    // Replaced or deleted while copying.
+                    compacted.garbage += RECORD_OVERHEAD + old.length;
+                }
+            }
+            // Writers kept counting garbage while the copy ran, including in segments sealed since, so only what the
+            // compacted segments held beyond the compacted one's own garbage is taken off the total.
+            long reclaimed = replaced.garbage - compacted.garbage;
+            for (Long id : new ArrayList<>(segments.headMap(target).keySet())) {
+                Segment superseded = segments.remove(id);
+                reclaimed += superseded.garbage;
+                superseded.channel.close();
+                Files.deleteIfExists(segmentPath(id));
+            }
+            segments.put(target, compacted);
+            garbageBytes -= reclaimed;
+        }
+        LOGGER.info("Compacted segments " + base + " to " + target + " into " + size + " bytes.");
+    }
+
+    /**
+     * One segment file and its running totals.
+     */
+    private static final class Segment {
+        private final long id;
+        private final long base;
+        private final FileChannel channel;
+        private long size;
+        private long garbage;
+
+        Segment(long id, long base, FileChannel channel, long size) {
+            this.id = id;
+            this.base = base;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A record read during replay whose batch hasn't ended yet.
+     */
+    private static final class PendingRecord {
+        private final byte type;
+        private final byte[] payload;
+        private final long offset;
+
+        PendingRecord(byte type, byte[] payload, long offset) {
+            this.type = type;
+            this.payload = payload;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Where the newest record of a live book is stored, along with the fields needed to filter without reading it.
+     */
+    private static final class Entry {
+        private final String title;
+        // The pooled Author, so the entries of one author share it and its names.
+        private final Author author;
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+
+        Entry(String title, Author author, Segment segment, long offset, int length) {
+            this.title = title;
+            this.author = AuthorPool.canonical(author);
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
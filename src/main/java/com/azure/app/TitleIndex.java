@@ -0,0 +1,201 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An in-memory index for search-as-you-type over book titles. It's updated one book at a time as books are saved
+ * and deleted.
+ *
+ * <p>Titles are normalized (lower case, accents and extra spaces removed) and kept in a sorted map, so a prefix
+ * search only visits the titles that match. Every normalized title is also broken into trigrams, with two spaces in
+ * front so the first letters get trigrams of their own. A query with a typo still shares most of its trigrams with
+ * the title it was meant to be, so only titles that share enough of them have their edit distance checked.</p>
+ *
+ * <p>The index isn't thread-safe; callers hold their own lock.</p>
+ */
+final class TitleIndex {
+    private static final int MAX_EDITS = 2;
+
+    private final NavigableMap<String, List<Book>> titles = new TreeMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+
+    /**
+     * Adds the book under its normalized title.
+     *
+     * @param book - Book that was loaded or saved
+     */
+    void add(Book book) {
+        String title = normalize(book.getTitle());
+        List<Book> books = titles.get(title);
+        if (books == null) {
+            books = new ArrayList<>(1);
+            titles.put(title, books);
+            for (String trigram : trigrams(title)) {
+                trigrams.computeIfAbsent(trigram, key -> new LinkedHashSet<>()).add(title);
+            }
+        }
+        books.add(book);
+    }
+
+    /**
+     * Removes any book with the same title and author.
+     *
+     * @param book - Book that was deleted or overwritten
+     */
+    void remove(Book book) {
+        String title = normalize(book.getTitle());
+        List<Book> books = titles.get(title);
+        if (books == null) {
+            return;
+        }
+        books.removeIf(b -> b.getTitle().contentEquals(book.getTitle())
+            && b.getAuthor().getLastName().contentEquals(book.getAuthor().getLastName())
+            && b.getAuthor().getFirstName().contentEquals(book.getAuthor().getFirstName()));
+        if (books.isEmpty()) {
+            titles.remove(title);
+            for (String trigram : trigrams(title)) {
+                Set<String> posting = trigrams.get(trigram);
+                posting.remove(title);
+                if (posting.isEmpty()) {
+                    trigrams.remove(trigram);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        titles.clear();
+        trigrams.clear();
+    }
+
+    /**
+     * Finds the books whose titles start with the query, followed by those whose titles start with something within
+     * two edits of it. Short queries allow fewer edits, since they have too few trigrams to narrow the search.
+     *
+     * @param query - what the user has typed so far
+     * @param limit - the most books to return
+     * @return the matching books, best matches first
+     */
+    List<Book> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<Book> results = new ArrayList<>();
+        for (List<Book> books : titles.subMap(normalized, true, normalized + Character.MAX_VALUE, false).values()) {
+            for (Book book : books) {
+                results.add(book);
+                if (results.size() == limit) {
+                    return results;
+                }
+            }
+        }
+        Set<String> queryTrigrams = new LinkedHashSet<>(trigrams(normalized));
+        // Each edit changes at most three trigrams, so a match has to share all but three per edit.
+        int maxEdits = Math.min(MAX_EDITS, (queryTrigrams.size() - 1) / 3);
+        if (maxEdits == 0) {
+            return results;
+        }
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            for (String title : trigrams.getOrDefault(trigram, Collections.emptySet())) {
+                shared.merge(title, 1, Integer::sum);
+            }
+        }
+        int threshold = queryTrigrams.size() - 3 * maxEdits;
+        Map<String, Integer> distances = new HashMap<>();
+        for (Map.Entry<String, Integer> candidate : shared.entrySet()) {
+            String title = candidate.getKey();
+            if (candidate.getValue() >= threshold && !title.startsWith(normalized)) {
+                int distance = prefixDistance(normalized, title, maxEdits);
+                if (distance <= maxEdits) {
+                    distances.put(title, distance);
+                }
+            }
+        }
+        List<String> matches = new ArrayList<>(distances.keySet());
+        matches.sort(Comparator.comparing((String title) -> distances.get(title)).thenComparing(title -> title));
+        for (String title : matches) {
+            for (Book book : titles.get(title)) {
+                results.add(book);
+                if (results.size() == limit) {
+                    return results;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Puts a title or query into the form the index compares: lower case, without accents, and with runs of
+     * whitespace turned into single spaces.
+     *
+     * @param text - the title or query
+     * @return the normalized text
+     */
+    static String normalize(String text) {
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+
+    private static List<String> trigrams(String normalized) {
+        String padded = "  " + normalized;
+        List<String> result = new ArrayList<>(normalized.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the smallest edit distance between the query and any prefix of the title, giving up once it's clear
+     * the distance is over the limit.
+     *
+     * @param query    - the normalized query
+     * @param title    - the normalized title
+     * @param maxEdits - the largest distance that matters
+     * @return the distance, or maxEdits + 1 if it's larger than maxEdits
+     */
+    private static int prefixDistance(String query, String title, int maxEdits) {
+        int columns = Math.min(title.length(), query.length() + maxEdits);
+        int[] previous = new int[columns + 1];
+        int[] current = new int[columns + 1];
+        for (int j = 0; j <= columns; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= query.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= columns; j++) {
+                int substitution = previous[j - 1] + (query.charAt(i - 1) == title.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int best = maxEdits + 1;
+        for (int j = 0; j <= columns; j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,96 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Makes ULIDs: 26 Crockford base 32 characters holding a 48-bit millisecond timestamp followed by 80 random bits.
+ * Since the timestamp comes first, ids sort by the time they were made, both as strings and in Cosmos.
+ *
+ * <p>The ids are monotonic within the process: an id made in the same millisecond as the previous one, or after the
+ * clock went back, is the previous one plus one. The last id is kept in an AtomicReference and replaced with
+ * compareAndSet, so callers never block one another. New random bits come from ThreadLocalRandom, which isn't
+ * shared between threads; 80 bits per millisecond keep ids from different processes apart.</p>
+ */
+final class UlidGenerator implements IdGenerator {
+    private static final char[] ENCODING = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final long RANDOM_HIGH_MASK = 0xFFFFL;
+    private static final int LENGTH = 26;
+
+    private final AtomicReference<Value> last = new AtomicReference<>(new Value(0, 0, 0));
+
+    /**
+     * One ULID: the timestamp, the top 16 random bits and the low 64 random bits.
+     */
+    private static final class Value {
+        private final long time;
+        private final long high;
+        private final long low;
+
+        private Value(long time, long high, long low) {
+            this.time = time;
+            this.high = high;
+            this.low = low;
+        }
+
+        /**
+         * Returns the next ULID after this one, carrying into the timestamp if the random bits run out.
+         *
+         * @return the next Value
+         */
+        private Value increment() {
+            if (low != -1L) {
+                return new Value(time, high, low + 1);
+            }
+            if (high != RANDOM_HIGH_MASK) {
+                return new Value(time, high + 1, 0);
+            }
+            return new Value(time + 1, 0, 0);
+        }
+    }
+
+    @Override
+    public String nextId() {
+        long now = System.currentTimeMillis();
+        Value previous;
+        Value next;
+        do {
+            previous = last.get();
+            if (now > previous.time) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                next = new Value(now, random.nextLong() & RANDOM_HIGH_MASK, random.nextLong());
+            } else {
+                next = previous.increment();
+            }
+        } while (!last.compareAndSet(previous, next));
+        return encode(next);
+    }
+
+    /**
+     * Writes the 128 bits as 26 base 32 digits, most significant first. The first digit holds only the top 3 bits
+     * of the timestamp's 50-bit field.
+     *
+     * @param value - the ULID to write
+     * @return the ULID's string form
+     */
+    private static String encode(Value value) {
+        char[] chars = new char[LENGTH];
+        long time = value.time;
+        for (int i = 9; i >= 0; i--) {
+            chars[i] = ENCODING[(int) (time & 31)];
+            time >>>= 5;
+        }
+        // The 80 random bits are the 16 bits of high followed by the 64 bits of low, written 5 bits at a time.
+        long high = value.high;
+        long low = value.low;
+        for (int i = LENGTH - 1; i >= 10; i--) {
+            chars[i] = ENCODING[(int) (low & 31)];
+            low = (low >>> 5) | ((high & 31) << 59);
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,380 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Makes multi-step changes to the local library atomic. Before a change touches any file, its complete list of file
+ * writes and deletes is appended to lib/journal.log and forced to disk; once the files are updated a commit record is
+ * appended. On start-up every change without a commit record is redone, so a crash can't leave half of a change
+ * behind. Redoing is safe because every operation writes the whole file or deletes it.
+ *
+ * <p>Writers that append at the same time share one force: whichever writer gets to force first covers every record
+ * written before it started, and the others return without forcing again. Commit records aren't forced, since losing
+ * one only means the change is redone. Once nothing is in flight and the journal is large enough, the files changed
+ * since the last checkpoint are forced and the journal is truncated.</p>
+ *
+ * <p>A change that fails after {@link #begin(List)} must be ended with {@link #abort(long)} instead of
+ * {@link #commit(long)}. That records it as failed, so it isn't redone on start-up, and lets checkpoints go on.</p>
+ */
+final class WriteAheadJournal implements Closeable {
+    static final String JOURNAL_PATH = Paths.get("lib", "journal.log").toString();
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadJournal.class);
+    private static final long CHECKPOINT_BYTES = 1024 * 1024;
+    private static final int RECORD_OVERHEAD = 17;
+    private static final byte BEGIN = 1;
+    private static final byte COMMIT = 2;
+    private static final byte ABORT = 3;
+
+    private final FileChannel channel;
+    private final Object flushLock = new Object();
+    private final Set<Path> touchedFiles = new HashSet<>();
+    private final Set<Path> touchedDirectories = new HashSet<>();
+    private final Set<Long> inFlight = new HashSet<>();
+    private long size;
+    private long nextTransaction;
+    private long written;
+    private long flushed;
+    private boolean redone;
+
+    /**
+     * A single file write or delete that is part of a change.
+     */
+    static final class Operation {
+        private final Path file;
+        private final byte[] contents;
+
+        private Operation(Path file, byte[] contents) {
+            this.file = file.toAbsolutePath();
+            this.contents = contents;
+        }
+
+        /**
+         * Replaces the whole file with the contents, creating its directories if needed.
+         *
+         * @param file     - the file to write
+         * @param contents - the file's new contents
+         * @return the operation
+         */
+        static Operation write(Path file, byte[] contents) {
+            return new Operation(file, contents);
+        }
+
+        /**
+         * Deletes the file if it exists.
+         *
+         * @param file - the file to delete
+         * @return the operation
+         */
+        static Operation delete(Path file) {
+            return new Operation(file, null);
+        }
+    }
+
+    /**
+     * Opens the journal and redoes every change that was started but not committed.
+     *
+     * @param root - the directory the library is stored in
+     * @throws IOException if the journal can't be read or a change can't be redone
+     */
+    WriteAheadJournal(String root) throws IOException {
+        Path file = Paths.get(root, JOURNAL_PATH);
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        recover();
+    }
+
+    /**
+     * Returns whether opening the journal redid an interrupted change, so anything derived from the files, such as
+     * the catalog snapshot, may be out of date.
+     *
+     * @return true if a change was redone
+     */
+    boolean redidChanges() {
+        return redone;
+    }
+
+    /**
+     * Durably records the operations of a change. Returns once the record is on disk.
+     *
+     * @param operations - the writes and deletes that make up the change
+     * @return the change's transaction id, to pass to {@link #commit(long)}
+     * @throws IOException if the record can't be written
+     */
+    long begin(List<Operation> operations) throws IOException {
+        ByteBuffer payload = encodeOperations(operations);
+        long transaction;
+        long sequence;
+        synchronized (this) {
+            transaction = ++nextTransaction;
+            append(transaction, BEGIN, payload);
+            sequence = ++written;
+            inFlight.add(transaction);
+        }
+        try {
+            synchronized (flushLock) {
+                if (flushed < sequence) {
+                    long target;
+                    synchronized (this) {
+                        target = written;
+                    }
+                    channel.force(false);
+                    flushed = target;
+                }
+            }
+        } catch (IOException e) {
+            abort(transaction);
+            throw e;
+        }
+        return transaction;
+    }
+
+    /**
+     * Carries out the operations of a change that was recorded with {@link #begin(List)}.
+     *
+     * @param operations - the writes and deletes that make up the change
+     * @throws IOException if a file can't be written or deleted
+     */
+    void apply(List<Operation> operations) throws IOException {
+        for (Operation operation : operations) {
+            if (operation.contents == null) {
+                Files.deleteIfExists(operation.file);
+            } else {
+                Files.createDirectories(operation.file.getParent());
+                Files.write(operation.file, operation.contents);
+            }
+        }
+        synchronized (this) {
+            for (Operation operation : operations) {
+                (operation.contents == null ? touchedDirectories : touchedFiles).add(operation.file);
+                touchedDirectories.add(operation.file.getParent());
+            }
+        }
+    }
+
+    /**
+     * Marks the change as done, so it won't be redone on start-up.
+     *
+     * @param transaction - the id returned by {@link #begin(List)}
+     * @throws IOException if the commit record can't be written
+     */
+    synchronized void commit(long transaction) throws IOException {
+        append(transaction, COMMIT, ByteBuffer.allocate(0));
+        inFlight.remove(transaction);
+        if (inFlight.isEmpty() && size >= CHECKPOINT_BYTES) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Marks a change that failed after it began, so it isn't redone on start-up and no longer holds back
+     * checkpoints. Whatever part of the change was applied stays as it is. Never throws, so it can be called while
+     * another error is on its way out; does nothing if the change was already committed or aborted.
+     *
+     * @param transaction - the id returned by {@link #begin(List)}
+     */
+    synchronized void abort(long transaction) {
+        if (!inFlight.remove(transaction)) {
+            return;
+        }
+        try {
+            append(transaction, ABORT, ByteBuffer.allocate(0));
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't record that change " + transaction + " failed; it'll be redone on start-up: ", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (inFlight.isEmpty()) {
+            checkpoint();
+        }
+        channel.close();
+    }
+
+    /**
+     * Forces the files changed since the last checkpoint, then empties the journal. Only called while nothing is in
+     * flight, so every change in the journal has been committed.
+     *
+     * @throws IOException if the journal can't be truncated
+     */
+    private void checkpoint() throws IOException {
+        for (Path file : touchedFiles) {
+            force(file);
+        }
+        for (Path directory : touchedDirectories) {
+            force(directory);
+        }
+        touchedFiles.clear();
+        touchedDirectories.clear();
+        channel.truncate(0);
+        channel.force(true);
+        size = 0;
+    }
+
+    /**
+     * Forces a file or directory to disk. Directories can't be opened on every platform, and files may have been
+     * deleted since, so failures are only logged.
+     *
+     * @param path - the file or directory
+     */
+    private static void force(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            file.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Couldn't force " + path + ": ", e);
+        }
+    }
+
+    private void append(long transaction, byte type, ByteBuffer payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.remaining());
+        record.putInt(payload.remaining()).putLong(transaction).put(type).put(payload.duplicate());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, record.position() - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record, size + record.position());
+        }
+        size += record.limit();
+    }
+
+    /**
+     * Reads the journal up to the first torn or corrupt record, redoes the changes that have no commit record in
+     * the order they were started, and checkpoints.
+     *
+     * @throws IOException if the journal can't be read or a change can't be redone
+     */
+    private void recover() throws IOException {
+        Map<Long, List<Operation>> uncommitted = new TreeMap<>();
+        long offset = 0;
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(13);
+        while (offset + RECORD_OVERHEAD <= length) {
+            header.clear();
+            if (!readFully(header, offset)) {
+                break;
+            }
+            header.flip();
+            int payloadLength = header.getInt();
+            long transaction = header.getLong();
+            byte type = header.get();
+            if (payloadLength < 0 || offset + RECORD_OVERHEAD + payloadLength > length) {
+                break;
+            }
+            ByteBuffer rest = ByteBuffer.allocate(payloadLength + 4);
+            if (!readFully(rest, offset + 13)) {
+                break;
+            }
+            rest.flip();
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 4, 9);
+            crc.update(rest.array(), 0, payloadLength);
+            if (rest.getInt(payloadLength) != (int) crc.getValue()) {
+                break;
+            }
+            if (type == BEGIN) {
+                rest.limit(payloadLength);
+                uncommitted.put(transaction, decodeOperations(rest));
+            } else {
+                // Committed and aborted changes are both finished.
+                uncommitted.remove(transaction);
+            }
+            nextTransaction = Math.max(nextTransaction, transaction);
+            offset += RECORD_OVERHEAD + payloadLength;
+        }
+        if (offset < length) {
+            LOGGER.warn("Ignoring a torn record at offset " + offset + " of the journal.");
+        }
+        for (Map.Entry<Long, List<Operation>> change : uncommitted.entrySet()) {
+            LOGGER.info("Redoing interrupted change " + change.getKey() + ".");
+            apply(change.getValue());
+            redone = true;
+        }
+        checkpoint();
+    }
+
+    /**
+     * Fills the buffer from the journal, starting at the position. A single read may return fewer bytes than asked
+     * for, so it reads until the buffer is full.
+     *
+     * @param buffer   - the buffer to fill, from its start
+     * @param position - where in the journal to start reading
+     * @return true if the buffer was filled, false if the journal ended first, which is a torn record
+     * @throws IOException if the journal can't be read
+     */
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer encodeOperations(List<Operation> operations) {
+        List<byte[]> paths = new ArrayList<>();
+        int length = 4;
+        for (Operation operation : operations) {
+            byte[] path = operation.file.toString().getBytes(StandardCharsets.UTF_8);
+            paths.add(path);
+            length += 1 + 4 + path.length + (operation.contents == null ? 0 : 4 + operation.contents.length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            buffer.put(operation.contents == null ? (byte) 0 : (byte) 1);
+            buffer.putInt(paths.get(i).length).put(paths.get(i));
+            if (operation.contents != null) {
+                buffer.putInt(operation.contents.length).put(operation.contents);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<Operation> decodeOperations(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<Operation> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean write = buffer.get() == 1;
+            byte[] path = new byte[buffer.getInt()];
+            buffer.get(path);
+            Path file = Paths.get(new String(path, StandardCharsets.UTF_8));
+            if (write) {
+                byte[] contents = new byte[buffer.getInt()];
+                buffer.get(contents);
+                operations.add(Operation.write(file, contents));
+            } else {
+                operations.add(Operation.delete(file));
+            }
+        }
+        return Collections.unmodifiableList(operations);
+    }
+}
@@ -0,0 +1,73 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+
+public class AuthorPoolTest {
+    /**
+     * Verifies that books decoded separately, from JSON and from the binary encoding, share one Author object, and
+     * that the bytes saved are counted.
+     *
+     * @throws IOException if a book can't be encoded or decoded
+     */
+    @Test
+    public void testDecodedBooksShareAuthor() throws IOException {
+        //Arrange
+        Book wonder = new Book("Wonder", new Author("Raquel Jaramillo", "Palacio-Pooled"),
+            URI.create("lib/images/Wonder.png"));
+        Book pluto = new Book("Pluto", new Author("Raquel Jaramillo", "Palacio-Pooled"),
+            URI.create("lib/images/Pluto.png"));
+        long before = AuthorPool.bytesSaved();
+        //Act
+        Book first = BookCodec.JSON.decode(BookCodec.JSON.encode(wonder));
+        Book second = BookCodec.JSON.decode(BookCodec.JSON.encode(pluto));
+        Book third = BookCodec.BINARY.decode(BookCodec.BINARY.encode(pluto));
+        //Assert
+        Assert.assertSame(first.getAuthor(), second.getAuthor());
+        Assert.assertSame(first.getAuthor(), third.getAuthor());
+        Assert.assertEquals("Palacio-Pooled, Raquel Jaramillo", first.getAuthor().toString());
+        Assert.assertTrue(AuthorPool.bytesSaved() > before);
+    }
+
+    /**
+     * Verifies that authors with the same last name share the string, and that an author missing a name isn't
+     * pooled.
+     */
+    @Test
+    public void testNamesShared() {
+        //Act
+        Author jane = AuthorPool.author("Jane", new String("Austen-Pooled"));
+        Author cassandra = AuthorPool.author("Cassandra", new String("Austen-Pooled"));
+        Author missing = AuthorPool.author(null, "Austen-Pooled");
+        //Assert
+        Assert.assertNotSame(jane, cassandra);
+        Assert.assertSame(jane.getLastName(), cassandra.getLastName());
+        Assert.assertNotSame(missing, AuthorPool.author(null, "Austen-Pooled"));
+    }
+
+    /**
+     * Verifies that names differing only in a trailing period take one place in the pool, as they're the same
+     * author, while each book keeps the spelling it was given.
+     */
+    @Test
+    public void testTrailingPeriodPooledTogether() {
+        //Arrange
+        Author initial = AuthorPool.author("J.", "Tolkien-Pooled");
+        int size = AuthorPool.size();
+        //Act
+        Author bare = AuthorPool.author("J", "Tolkien-Pooled");
+        Author parsed = Author.of("J", "Tolkien-Pooled");
+        //Assert
+        Assert.assertEquals(size, AuthorPool.size());
+        Assert.assertSame(bare, parsed);
+        Assert.assertEquals("Tolkien-Pooled, J.", initial.toString());
+        Assert.assertEquals("Tolkien-Pooled, J", bare.toString());
+        Assert.assertEquals(Author.normalizeName(initial.getFirstName()), Author.normalizeName(bare.getFirstName()));
+    }
+}
@@ -0,0 +1,88 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how many books per second each codec encodes and decodes, and how large an encoded book is. Not run as
+ * part of the tests; run its main method with the test classpath.
+ */
+public final class BookCodecBenchmark {
+    private static final int BOOKS = 10_000;
+    private static final int ROUNDS = 20;
+
+    private BookCodecBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Book> books = new ArrayList<>(BOOKS);
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(new Book("The Book Number " + i, new Author("First" + i % 100, "Last" + i % 1000),
+                new File("lib/images/Last/First/The-Book-Number-" + i + ".png").toURI()));
+        }
+        BookCodec[] codecs = {new MapperPerCall(), BookCodec.JSON, new JsonBookCodec(true), BookCodec.BINARY};
+        String[] names = {"json (mapper per call)", "json", "json (indented)", "binary"};
+        for (int c = 0; c < codecs.length; c++) {
+            BookCodec codec = codecs[c];
+            // The first rounds warm up the JIT and aren't counted.
+            run(codec, books, ROUNDS);
+            long[] result = run(codec, books, ROUNDS);
+            double count = (double) ROUNDS * BOOKS;
+            System.out.printf("%-24s %8.0f encodes/ms %8.0f decodes/ms %6d bytes/book%n", names[c],
+                count / (result[0] / 1e6), count / (result[1] / 1e6), result[2] / BOOKS);
+        }
+    }
+
+    /**
+     * What JsonHandler used to do: a new ObjectMapper for every book.
+     */
+    private static final class MapperPerCall implements BookCodec {
+        @Override
+        public String name() {
+            return "json";
+        }
+
+        @Override
+        public byte[] encode(Book book) throws IOException {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsBytes(book);
+        }
+
+        @Override
+        public Book decode(byte[] data, int offset, int length) throws IOException {
+            return new ObjectMapper().readValue(data, offset, length, Book.class);
+        }
+    }
+
+    private static long[] run(BookCodec codec, List<Book> books, int rounds) throws IOException {
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        long bytes = 0;
+        byte[][] encoded = new byte[books.size()][];
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < books.size(); i++) {
+                encoded[i] = codec.encode(books.get(i));
+            }
+            long middle = System.nanoTime();
+            for (byte[] data : encoded) {
+                if (codec.decode(data).getTitle() == null) {
+                    throw new IllegalStateException("Decoded a book without a title.");
+                }
+            }
+            encodeNanos += middle - start;
+            decodeNanos += System.nanoTime() - middle;
+        }
+        for (byte[] data : encoded) {
+            bytes += data.length;
+        }
+        return new long[]{encodeNanos, decodeNanos, bytes};
+    }
+}
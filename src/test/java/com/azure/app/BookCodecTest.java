@@ -0,0 +1,54 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class BookCodecTest {
+    private final Book book = new Book("Pok\u00e9mon Adventures", new Author("Hidenori", "Kusaka"),
+        new File("lib/images/Kusaka/Hidenori/Pok\u00e9mon-Adventures.png").toURI());
+
+    /**
+     * Verifies that both codecs give back the book they were given, and that either encoding can be decoded without
+     * knowing which codec wrote it.
+     *
+     * @throws IOException if a book can't be encoded or decoded
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (BookCodec codec : new BookCodec[]{BookCodec.JSON, BookCodec.BINARY}) {
+            //Act
+            byte[] encoded = codec.encode(book);
+            Book decoded = codec.decode(encoded);
+            Book detected = BookCodec.decodeAny(encoded, 0, encoded.length);
+            //Assert
+            for (Book result : new Book[]{decoded, detected}) {
+                Assert.assertEquals(book.getTitle(), result.getTitle());
+                Assert.assertEquals(book.getAuthor().getFirstName(), result.getAuthor().getFirstName());
+                Assert.assertEquals(book.getAuthor().getLastName(), result.getAuthor().getLastName());
+                Assert.assertEquals(book.getCover(), result.getCover());
+                Assert.assertEquals(book.id(), result.id());
+            }
+        }
+        Assert.assertTrue(BookCodec.BINARY.encode(book).length < BookCodec.JSON.encode(book).length);
+    }
+
+    /**
+     * Verifies that a truncated binary record is rejected rather than read as a different book.
+     *
+     * @throws IOException if the book can't be encoded
+     */
+    @Test(expected = IOException.class)
+    public void testTruncatedBinary() throws IOException {
+        //Arrange
+        byte[] encoded = BookCodec.BINARY.encode(book);
+        //Act
+        BookCodec.BINARY.decode(Arrays.copyOf(encoded, encoded.length - 3));
+    }
+}
@@ -0,0 +1,40 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CosmosDocumentIdTest {
+    /**
+     * Verifies that a book's id only depends on its normalized title and author, a trailing period in a name
+     * included, so saving it again replaces it.
+     */
+    @Test
+    public void testSameBookSameId() {
+        //Act
+        String id = CosmosDocumentProvider.documentId("Wonder", new Author("RJ", "Palacio"));
+        String again = CosmosDocumentProvider.documentId("  wonder ", new Author("rj", "PALACIO"));
+        String period = CosmosDocumentProvider.documentId("Wonder", new Author("R.J.", "Palacio"));
+        String bare = CosmosDocumentProvider.documentId("Wonder", new Author("R.J", "Palacio"));
+        //Assert
+        Assert.assertEquals(id, again);
+        Assert.assertEquals(period, bare);
+        Assert.assertEquals(36, id.length());
+    }
+
+    /**
+     * Verifies that different books, including ones whose parts run together the same way, get different ids.
+     */
+    @Test
+    public void testDifferentBooksDifferentIds() {
+        //Act
+        String wonder = CosmosDocumentProvider.documentId("Wonder", new Author("RJ", "Palacio"));
+        String auggie = CosmosDocumentProvider.documentId("Auggie", new Author("RJ", "Palacio"));
+        String shifted = CosmosDocumentProvider.documentId("J Wonder", new Author("R", "Palacio"));
+        //Assert
+        Assert.assertNotEquals(wonder, auggie);
+        Assert.assertNotEquals(wonder, shifted);
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.azure.data.cosmos.CosmosClientException;
+import com.azure.data.cosmos.CosmosContainer;
+import com.azure.data.cosmos.CosmosItem;
+import com.azure.data.cosmos.CosmosItemProperties;
+import com.azure.data.cosmos.CosmosItemRequestOptions;
+import com.azure.data.cosmos.CosmosItemResponse;
+import com.azure.data.cosmos.FeedOptions;
+import com.azure.data.cosmos.FeedResponse;
+import com.azure.data.cosmos.SqlQuerySpec;
+import org.junit.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class CosmosDocumentProviderTest {
+    private static final Author AUTHOR = new Author("RJ", "Palacio");
+    private static final URI COVER = URI.create("lib/images/Wonder.png");
+
+    /**
+     * Verifies that saving a book is a single upsert, without a query for older copies.
+     */
+    @Test
+    public void testSaveIsOneUpsert() {
+        //Arrange
+        CosmosContainer container = upsertingContainer();
+        CosmosDocumentProvider provider = new CosmosDocumentProvider(null, Mono.just(container),
+            CosmosPartitioning.ID, null);
+        //Act
+        StepVerifier.create(provider.saveBook("Wonder", AUTHOR, COVER))
+            .verifyComplete();
+        //Assert
+        Mockito.verify(container).upsertItem(Mockito.any(), Mockito.any(CosmosItemRequestOptions.class));
+        Mockito.verifyNoMoreInteractions(container);
+    }
+
+    /**
+     * Verifies that while reads are dual, saving a book deletes its copy in the ID container, found by a query when
+     * it was saved before ids were derived.
+     *
+     * @throws IOException if the legacy book can't be encoded
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDualSaveDeletesLegacyCopy() throws IOException {
+        //Arrange
+        CosmosContainer container = upsertingContainer();
+        String derived = CosmosDocumentProvider.documentId("Wonder", AUTHOR);
+        CosmosItem missing = Mockito.mock(CosmosItem.class);
+        CosmosClientException notFound = Mockito.mock(CosmosClientException.class);
+        Mockito.when(notFound.statusCode()).thenReturn(404);
+        Mockito.when(missing.delete()).thenReturn(Mono.error(notFound));
+        FeedResponse<CosmosItemProperties> response = Mockito.mock(FeedResponse.class);
+        Mockito.when(response.results()).thenReturn(Collections.singletonList(new CosmosItemProperties(
+            new String(BookCodec.JSON.encode(new Book("Wonder", AUTHOR, COVER, "legacy")), StandardCharsets.UTF_8))));
+        CosmosItem legacy = Mockito.mock(CosmosItem.class);
+        Mockito.when(legacy.delete()).thenReturn(Mono.just(Mockito.mock(CosmosItemResponse.class)));
+        CosmosContainer legacyContainer = Mockito.mock(CosmosContainer.class);
+        Mockito.when(legacyContainer.getItem(derived, derived)).thenReturn(missing);
+        Mockito.when(legacyContainer.queryItems(Mockito.any(SqlQuerySpec.class), Mockito.any(FeedOptions.class)))
+            .thenReturn(Flux.just(response));
+        Mockito.when(legacyContainer.getItem("legacy", "legacy")).thenReturn(legacy);
+        CosmosDocumentProvider provider = new CosmosDocumentProvider(null, Mono.just(container),
+            CosmosPartitioning.AUTHOR, Mono.just(legacyContainer));
+        //Act
+        StepVerifier.create(provider.saveBook("Wonder", AUTHOR, COVER))
+            .verifyComplete();
+        //Assert
+        Mockito.verify(container).upsertItem(Mockito.any(), Mockito.any(CosmosItemRequestOptions.class));
+        Mockito.verifyNoMoreInteractions(container);
+        Mockito.verify(legacy).delete();
+    }
+
+    private static CosmosContainer upsertingContainer() {
+        CosmosContainer container = Mockito.mock(CosmosContainer.class);
+        Mockito.when(container.upsertItem(Mockito.any(), Mockito.any(CosmosItemRequestOptions.class)))
+            .thenReturn(Mono.just(Mockito.mock(CosmosItemResponse.class)));
+        return container;
+    }
+}
@@ -0,0 +1,44 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.azure.data.cosmos.FeedOptions;
+import com.azure.data.cosmos.PartitionKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+public class CosmosPartitioningTest {
+    /**
+     * Verifies that queries for one author read the author's partition only when the container is partitioned by
+     * author.
+     */
+    @Test
+    public void testAuthorQueriesReadOnePartition() {
+        //Arrange
+        Author author = new Author("RJ", "Palacio");
+        //Act
+        FeedOptions byAuthor = CosmosPartitioning.AUTHOR.options(author);
+        FeedOptions byId = CosmosPartitioning.ID.options(author);
+        //Assert
+        Assert.assertEquals(new PartitionKey("Palacio"), byAuthor.partitionKey());
+        Assert.assertNotEquals(Boolean.TRUE, byAuthor.enableCrossPartitionQuery());
+        Assert.assertNull(byId.partitionKey());
+        Assert.assertEquals(Boolean.TRUE, byId.enableCrossPartitionQuery());
+    }
+
+    /**
+     * Verifies that a book's partition key is its id or its author's last name.
+     */
+    @Test
+    public void testPartitionKey() {
+        //Arrange
+        Book book = new Book("Wonder", new Author("RJ", "Palacio"), new File("Wonder.png").toURI());
+        //Act and Assert
+        Assert.assertEquals(book.id(), CosmosPartitioning.ID.partitionKey(book));
+        Assert.assertEquals("Palacio", CosmosPartitioning.AUTHOR.partitionKey(book));
+        Assert.assertEquals("/author/lastName", CosmosPartitioning.AUTHOR.partitionKeyPath());
+    }
+}
@@ -0,0 +1,81 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import com.azure.data.cosmos.CompositePath;
+import com.azure.data.cosmos.CompositePathSortOrder;
+import com.azure.data.cosmos.IndexingPolicy;
+import com.azure.data.cosmos.SqlParameter;
+import com.azure.data.cosmos.SqlQuerySpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CosmosQueryTest {
+    /**
+     * Verifies that values are bound as parameters and never change the query text, even when they hold quotes.
+     */
+    @Test
+    public void testValuesBoundAsParameters() {
+        //Act
+        SqlQuerySpec first = CosmosQuery.BY_TITLE_AND_AUTHOR.spec("Harry \"Potter\"", "O'Brien", "Tim");
+        SqlQuerySpec second = CosmosQuery.BY_TITLE_AND_AUTHOR.spec("Wonder", "Palacio", "RJ");
+        //Assert
+        Assert.assertEquals(CosmosQuery.BY_TITLE_AND_AUTHOR.text(), first.queryText());
+        Assert.assertEquals(first.queryText(), second.queryText());
+        Assert.assertFalse(first.queryText().contains("Potter"));
+        Assert.assertEquals(3, first.parameters().size());
+        SqlParameter title = first.parameters().get(0);
+        Assert.assertEquals("@title", title.name());
+        Assert.assertEquals("Harry \"Potter\"", title.value(String.class));
+        Assert.assertEquals("Wonder", second.parameters().get(0).value(String.class));
+    }
+
+    /**
+     * Verifies that the containers' policy has a composite index on the ORDER BY fields, in the order the queries
+     * sort by, and that adding it to an existing policy keeps that policy's other composite indexes.
+     */
+    @Test
+    public void testIndexingPolicyCoversOrderBy() {
+        //Act
+        IndexingPolicy policy = CosmosQuery.indexingPolicy();
+        //Assert
+        Assert.assertTrue(CosmosQuery.hasOrderIndex(policy));
+        Assert.assertTrue(policy.toJson().contains("\"compositeIndexes\""));
+        Assert.assertEquals("/*", policy.includedPaths().get(0).path());
+        List<CompositePath> index = policy.compositeIndexes().get(0);
+        Assert.assertEquals(CosmosQuery.ORDER_PATHS.size(), index.size());
+        String text = CosmosQuery.ALL.text();
+        int previous = text.indexOf("ORDER BY");
+        for (int i = 0; i < index.size(); i++) {
+            Assert.assertEquals(CosmosQuery.ORDER_PATHS.get(i), index.get(i).path());
+            Assert.assertEquals(CompositePathSortOrder.ASCENDING, index.get(i).order());
+            int position = text.indexOf("b" + index.get(i).path().replace('/', '.'));
+            Assert.assertTrue(position > previous);
+            previous = position;
+        }
+        //Arrange
+        IndexingPolicy existing = new IndexingPolicy().compositeIndexes(new ArrayList<>(Collections.singletonList(
+            Arrays.asList(new CompositePath().path("/title"), new CompositePath().path("/id")))));
+        Assert.assertFalse(CosmosQuery.hasOrderIndex(existing));
+        Assert.assertFalse(CosmosQuery.hasOrderIndex(new IndexingPolicy()));
+        //Act
+        CosmosQuery.withOrderIndex(existing);
+        //Assert
+        Assert.assertTrue(CosmosQuery.hasOrderIndex(existing));
+        Assert.assertEquals(2, existing.compositeIndexes().size());
+    }
+
+    /**
+     * Verifies that binding the wrong number of values is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() {
+        CosmosQuery.BY_AUTHOR.spec("Palacio");
+    }
+}
@@ -0,0 +1,59 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+
+public class FullTextIndexTest {
+    private FullTextIndex index;
+    private URI cover;
+
+    /**
+     * Fills an index with books by two authors.
+     */
+    @Before
+    public void setUp() {
+        index = new FullTextIndex();
+        cover = new File("cover.png").toURI();
+        Author tolkien = new Author("J.R.R.", "Tolkien");
+        index.add(new Book("The Fellowship of the Ring", tolkien, cover));
+        index.add(new Book("The Two Towers", tolkien, cover));
+        index.add(new Book("The Hobbit", tolkien, cover));
+        index.add(new Book("The Ring of Solomon", new Author("Jonathan", "Stroud"), cover));
+    }
+
+    /**
+     * Verifies that a book matching every keyword ranks above books matching only some.
+     */
+    @Test
+    public void testRanking() {
+        //Act
+        List<Book> books = index.search("Tolkien RING", 10);
+        //Assert
+        Assert.assertEquals(4, books.size());
+        Assert.assertEquals("The Fellowship of the Ring", books.get(0).getTitle());
+        Assert.assertTrue(index.search("dragons", 10).isEmpty());
+    }
+
+    /**
+     * Verifies that only the top results are returned, and that replaced and removed books aren't found.
+     */
+    @Test
+    public void testLimitReplaceAndRemove() {
+        //Act
+        index.add(new Book("The Hobbit", new Author("J.R.R.", "Tolkien"), new File("new.png").toURI()));
+        index.remove(new Book("The Two Towers", new Author("J.R.R.", "Tolkien"), cover));
+        //Assert
+        Assert.assertEquals(1, index.search("tolkien", 1).size());
+        Assert.assertEquals(2, index.search("tolkien", 10).size());
+        Assert.assertTrue(index.search("towers", 10).isEmpty());
+        Assert.assertEquals(1, index.search("hobbit", 10).size());
+    }
+}
@@ -0,0 +1,73 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class IdGeneratorTest {
+    /**
+     * Verifies that ULIDs made on several threads at once are all different, and that each thread's ids increase.
+     *
+     * @throws Exception if a thread fails
+     */
+    @Test
+    public void testUlidsUniqueAndMonotonic() throws Exception {
+        //Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        //Act
+        for (int thread = 0; thread < 4; thread++) {
+            futures.add(executor.submit(() -> {
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < 10000; i++) {
+                    ids.add(IdGenerator.ULID.nextId());
+                }
+                return ids;
+            }));
+        }
+        //Assert
+        Set<String> all = new HashSet<>();
+        for (Future<List<String>> future : futures) {
+            List<String> ids = future.get();
+            for (int i = 1; i < ids.size(); i++) {
+                Assert.assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0);
+            }
+            all.addAll(ids);
+        }
+        executor.shutdown();
+        Assert.assertEquals(40000, all.size());
+        String id = IdGenerator.ULID.nextId();
+        Assert.assertEquals(26, id.length());
+        Assert.assertTrue(id.matches("[0-7][0-9A-HJKMNP-TV-Z]{25}"));
+    }
+
+    /**
+     * Verifies that generators are chosen by name in any case, and that an unknown name is rejected.
+     */
+    @Test
+    public void testGeneratorForName() {
+        //Act
+        IdGenerator ulid = IdGenerator.forName("ULID");
+        IdGenerator uuid = IdGenerator.forName("uuid");
+        //Assert
+        Assert.assertSame(IdGenerator.ULID, ulid);
+        Assert.assertSame(IdGenerator.RANDOM_UUID, uuid);
+        Assert.assertEquals(36, uuid.nextId().length());
+        try {
+            IdGenerator.forName("sequence");
+            Assert.fail("An unknown generator was accepted.");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("sequence"));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.test.StepVerifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class LayoutMigrationTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private String root;
+
+    /**
+     * Points the tests at their temporary library.
+     */
+    @Before
+    public void setUp() {
+        root = folder.getRoot().toString();
+    }
+
+    /**
+     * Verifies that the migration moves the books and their covers into shards, that the moved books are read back
+     * with their new covers, and that running it again finds nothing left to move.
+     *
+     * @throws IOException if the library can't be written
+     */
+    @Test
+    public void testMigrationMovesBooksAndCovers() throws IOException {
+        //Arrange
+        Author palacio = new Author("RJ", "Palacio");
+        Book wonder = new Book("Wonder", palacio, URI.create("lib/images/Palacio/RJ/Wonder.png"));
+        Assert.assertTrue(new JsonHandler().writeJSON(wonder, root));
+        Assert.assertTrue(new JsonHandler().writeJSON(new Book("Emma", new Author("Jane", "Austen"),
+            URI.create("lib/images/Austen/Jane/Emma.png")), root));
+        Path cover = Paths.get(root, "lib", "images", "Palacio", "RJ", "Wonder.png");
+        Files.createDirectories(cover.getParent());
+        Files.write(cover, new byte[]{1, 2, 3});
+        LayoutMigration migration = new LayoutMigration(root, Paths.get(root));
+        //Act
+        int moved = migration.migrate();
+        //Assert
+        Assert.assertEquals(2, moved);
+        Assert.assertFalse(new File(root, "lib/jsonFiles/Palacio").exists());
+        Assert.assertFalse(cover.toFile().exists());
+        Path shardedCover = LibraryLayout.SHARDED.authorDirectory(Paths.get(root, "lib", "images"), palacio)
+            .resolve("Wonder.png");
+        Assert.assertTrue(Files.exists(shardedCover));
+        Assert.assertTrue(new JsonHandler().getJsonFile(wonder, root, LibraryLayout.SHARDED).exists());
+        LocalDocumentProvider provider = new LocalDocumentProvider(root, false, 1, LibraryLayout.SHARDED);
+        StepVerifier.create(provider.findBook("Wonder").map(book -> Paths.get(root, book.getCover().getPath())))
+            .expectNext(shardedCover)
+            .verifyComplete();
+        StepVerifier.create(provider.getBooks().count()).expectNext(2L).verifyComplete();
+        provider.closeStorage();
+        Assert.assertEquals(0, migration.migrate());
+    }
+
+    /**
+     * Verifies that a sharded provider reads books left in the flat layout, and that saving one of them moves it
+     * into its shard.
+     */
+    @Test
+    public void testBothLayoutsRead() {
+        //Arrange
+        Author palacio = new Author("RJ", "Palacio");
+        URI cover = new File(root, "Wonder.png").toURI();
+        Book flat = new Book("Wonder", palacio, cover);
+        Assert.assertTrue(new JsonHandler().writeJSON(flat, root));
+        LocalDocumentProvider provider = new LocalDocumentProvider(root, false, 1, LibraryLayout.SHARDED);
+        //Act
+        provider.saveBook("Pluto", palacio, cover).block();
+        //Assert
+        StepVerifier.create(provider.findBook(palacio).count()).expectNext(2L).verifyComplete();
+        //Act
+        provider.saveBook("Wonder", palacio, cover).block();
+        //Assert
+        StepVerifier.create(provider.findBook(palacio).count()).expectNext(2L).verifyComplete();
+        Assert.assertFalse(new JsonHandler().getJsonFile(flat, root).exists());
+        Assert.assertTrue(new JsonHandler().getJsonFile(flat, root, LibraryLayout.SHARDED).exists());
+        provider.closeStorage();
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.test.StepVerifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class LibraryArchiveTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private String root;
+
+    /**
+     * Points the tests at their temporary library.
+     */
+    @Before
+    public void setUp() {
+        root = folder.getRoot().toString();
+    }
+
+    /**
+     * Verifies that a catalog exported from one provider, plain and gzipped, is imported whole into another.
+     *
+     * @throws IOException if the cover's path can't be encoded
+     */
+    @Test
+    public void testExportAndImport() throws IOException {
+        //Arrange
+        Author palacio = new Author("RJ", "Palacio");
+        URI cover = new File(root, "Wonder.png").toURI();
+        LocalDocumentProvider local = new LocalDocumentProvider(root);
+        local.saveBook("Wonder", palacio, cover).block();
+        local.saveBook("Pluto", palacio, cover).block();
+        Author austen = new Author("Jane", "Austen");
+        local.saveBook("Emma", austen, cover).block();
+        URI stored = LocalDocumentProvider.relativeCover("Emma", austen, cover);
+        Path plain = Paths.get(root, "books.ndjson");
+        Path gzipped = Paths.get(root, "books.ndjson.gz");
+        //Act
+        StepVerifier.create(LibraryArchive.export(local.getBooks(), plain)).expectNext(3L).verifyComplete();
+        StepVerifier.create(LibraryArchive.export(local.getBooks(), gzipped)).expectNext(3L).verifyComplete();
+        local.closeStorage();
+        //Assert
+        for (Path file : new Path[]{plain, gzipped}) {
+            SegmentLogDocumentProvider imported = new SegmentLogDocumentProvider(Paths.get(root, file.getFileName()
+                .toString() + "-import").toString());
+            StepVerifier.create(LibraryArchive.importBooks(file, imported).filter(SaveResult::isSuccessful).count())
+                .expectNext(3L)
+                .verifyComplete();
+            StepVerifier.create(imported.findBook(palacio).map(Book::getTitle).sort())
+                .expectNext("Pluto", "Wonder")
+                .verifyComplete();
+            StepVerifier.create(imported.findBook("Emma").map(Book::getCover)).expectNext(stored).verifyComplete();
+            imported.closeStorage();
+        }
+    }
+
+    /**
+     * Verifies that unknown fields are skipped, that a record missing a title is reported as a failure without
+     * stopping the import, and that a line that isn't a JSON object ends the read with an error.
+     *
+     * @throws IOException if the file can't be written
+     */
+    @Test
+    public void testBadRecords() throws IOException {
+        //Arrange
+        Path file = Paths.get(root, "books.ndjson");
+        Files.write(file, ("{\"title\":\"Wonder\",\"shelf\":{\"row\":2},\"author\":{\"lastName\":\"Palacio\","
+            + "\"firstName\":\"RJ\"},\"cover\":\"lib/images/Wonder.png\"}\n"
+            + "{\"author\":{\"lastName\":\"Austen\",\"firstName\":\"Jane\"},\"cover\":\"lib/images/Emma.png\"}\n")
+            .getBytes(StandardCharsets.UTF_8));
+        Path broken = Paths.get(root, "broken.ndjson");
+        Files.write(broken, "[1, 2]\n".getBytes(StandardCharsets.UTF_8));
+        SegmentLogDocumentProvider provider = new SegmentLogDocumentProvider(root);
+        //Act and Assert
+        StepVerifier.create(LibraryArchive.importBooks(file, provider).map(SaveResult::isSuccessful).sort())
+            .expectNext(false, true)
+            .verifyComplete();
+        StepVerifier.create(provider.findBook("Wonder").count()).expectNext(1L).verifyComplete();
+        StepVerifier.create(LibraryArchive.read(broken)).verifyError(IOException.class);
+        provider.closeStorage();
+    }
+}
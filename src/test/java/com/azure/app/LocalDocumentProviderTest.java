@@ -0,0 +1,448 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+public class LocalDocumentProviderTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private String root;
+
+    /**
+     * Points the tests at their temporary library, so they don't see each other's books.
+     */
+    @Before
+    public void setUp() {
+        root = folder.getRoot().toString();
+    }
+
+    /**
+     * Verifies that JSON files written and removed by another process show up in a watching provider.
+     */
+    @Test
+    public void testWatcherPicksUpExternalChanges() {
+        //Arrange
+        LocalDocumentProvider provider = new LocalDocumentProvider(root, true);
+        Book book = new Book("Wonder", new Author("RJ", "Palacio"), new File(root, "Wonder.png").toURI());
+        try {
+            //Act
+            Assert.assertTrue(new JsonHandler().writeJSON(book, root));
+            //Assert
+            Assert.assertTrue(waitFor(() -> provider.findBook("Wonder").hasElements().block()));
+            //Act
+            Assert.assertTrue(new JsonHandler().getJsonFile(book, root).delete());
+            //Assert
+            Assert.assertTrue(waitFor(() -> !provider.findBook("Wonder").hasElements().block()));
+        } finally {
+            provider.closeStorage();
+        }
+    }
+
+    /**
+     * Verifies that a restart reads the catalog snapshot while the directories are unchanged, and goes back to the
+     * JSON files once a book is added behind the provider's back.
+     *
+     * @throws IOException if a JSON file can't be rewritten
+     */
+    @Test
+    public void testSnapshotUsedUntilDirectoriesChange() throws IOException {
+        //Arrange
+        Author author = new Author("RJ", "Palacio");
+        URI cover = new File(root, "Wonder.png").toURI();
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        provider.saveBook("Wonder", author, cover).block();
+        provider.closeStorage();
+        File jsonFile = new JsonHandler().getJsonFile(new Book("Wonder", author, cover), root);
+        // Rewriting the file in place leaves its directory's time alone, so only the snapshot still knows the book.
+        Files.write(jsonFile.toPath(), "not json".getBytes(StandardCharsets.UTF_8));
+        //Act
+        provider = new LocalDocumentProvider(root);
+        //Assert
+        StepVerifier.create(provider.findBook("Wonder").map(Book::getTitle)).expectNext("Wonder").verifyComplete();
+        //Act
+        Assert.assertTrue(new JsonHandler().writeJSON(new Book("Pluto", author, cover), root));
+        provider = new LocalDocumentProvider(root);
+        //Assert
+        StepVerifier.create(provider.findBook("Pluto").map(Book::getTitle)).expectNext("Pluto").verifyComplete();
+        StepVerifier.create(provider.findBook("Wonder")).verifyComplete();
+    }
+
+    /**
+     * Verifies that a change redone on start-up discards the catalog snapshot, even though rewriting the same book's
+     * file in place leaves the directory times the snapshot checks unchanged.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    @Test
+    public void testRedoneChangeDiscardsSnapshot() throws IOException {
+        //Arrange
+        Author author = new Author("RJ", "Palacio");
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        provider.saveBook("Wonder", author, new File(root, "Wonder.png").toURI()).block();
+        provider.closeStorage();
+        Book saved = new Book("Wonder", author, new File(root, "Wonder.png").toURI());
+        File jsonFile = new JsonHandler().getJsonFile(saved, root);
+        Book recovered = new Book("Wonder", author, URI.create("lib/images/Palacio/RJ/Wonder.gif"));
+        WriteAheadJournal journal = new WriteAheadJournal(root);
+        journal.begin(Collections.singletonList(
+            WriteAheadJournal.Operation.write(jsonFile.toPath(), new JsonHandler().toJSON(recovered))));
+        journal.close();
+        //Act
+        provider = new LocalDocumentProvider(root);
+        //Assert
+        StepVerifier.create(provider.findBook("Wonder").map(book -> book.getCover().toString()))
+            .expectNext("lib/images/Palacio/RJ/Wonder.gif")
+            .verifyComplete();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that a change recorded in the journal but never committed is redone when the provider starts.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    @Test
+    public void testInterruptedChangeRedone() throws IOException {
+        //Arrange
+        Book book = new Book("Wonder", new Author("RJ", "Palacio"), new File(root, "Wonder.png").toURI());
+        File jsonFile = new JsonHandler().getJsonFile(book, root);
+        File orphan = new File(root, "orphan.json");
+        Assert.assertTrue(orphan.createNewFile());
+        WriteAheadJournal journal = new WriteAheadJournal(root);
+        journal.begin(Arrays.asList(
+            WriteAheadJournal.Operation.write(jsonFile.toPath(), new JsonHandler().toJSON(book)),
+            WriteAheadJournal.Operation.delete(orphan.toPath())));
+        //Act
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        //Assert
+        StepVerifier.create(provider.findBook("Wonder").map(Book::getTitle)).expectNext("Wonder").verifyComplete();
+        Assert.assertFalse(orphan.exists());
+        provider.closeStorage();
+        journal.close();
+    }
+
+    /**
+     * Verifies that a change that fails part way is aborted, so the journal is still checkpointed and the change
+     * isn't redone on the next start.
+     *
+     * @throws IOException if the blocking directory can't be created
+     */
+    @Test
+    public void testFailedChangeAborted() throws IOException {
+        //Arrange
+        Author author = new Author("RJ", "Palacio");
+        URI cover = new File(root, "Wonder.png").toURI();
+        File jsonFile = new JsonHandler().getJsonFile(new Book("Wonder", author, cover), root);
+        Assert.assertTrue(jsonFile.mkdirs());
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        //Act
+        StepVerifier.create(provider.saveBook("Wonder", author, cover)).verifyError(IOException.class);
+        provider.saveBook("Pluto", author, cover).block();
+        provider.closeStorage();
+        //Assert
+        Assert.assertEquals(0, Files.size(new File(root, WriteAheadJournal.JOURNAL_PATH).toPath()));
+        Assert.assertTrue(jsonFile.delete());
+        provider = new LocalDocumentProvider(root);
+        StepVerifier.create(provider.getBooks().map(Book::getTitle)).expectNext("Pluto").verifyComplete();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that a bulk save spanning several batches reports each book, and that only the invalid one fails.
+     */
+    @Test
+    public void testSaveBooks() {
+        //Arrange
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        URI cover = new File(root, "Wonder.png").toURI();
+        Flux<Book> books = Flux.range(0, 2500).map(i -> new Book(i == 1234 ? "" : "Book " + i,
+            new Author("RJ", "Palacio"), cover));
+        //Act
+        List<SaveResult> results = provider.saveBooks(books).collectList().block();
+        //Assert
+        Assert.assertNotNull(results);
+        Assert.assertEquals(2500, results.size());
+        Assert.assertEquals(1, results.stream().filter(result -> !result.isSuccessful()).count());
+        Assert.assertEquals("", results.get(1234).getBook().getTitle());
+        StepVerifier.create(provider.findBook(new Author("RJ", "Palacio")).count()).expectNext(2499L)
+            .verifyComplete();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that paging through the catalog returns every book once, in author and title order, and that an
+     * author's pages only hold that author's books.
+     */
+    @Test
+    public void testPages() {
+        //Arrange
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        URI cover = new File(root, "Wonder.png").toURI();
+        Author palacio = new Author("RJ", "Palacio");
+        provider.saveBooks(Flux.range(0, 25).map(i -> new Book(String.format("Book %02d", i),
+            i % 2 == 0 ? palacio : new Author("Mark", "Twain"), cover))).blockLast();
+        //Act
+        List<Book> all = new ArrayList<>();
+        String key = null;
+        do {
+            BookPage page = provider.getBooks(10, key).block();
+            Assert.assertNotNull(page);
+            all.addAll(page.getBooks());
+            key = page.getContinuationKey();
+        } while (key != null);
+        BookPage first = provider.findBook(palacio, 5, null).block();
+        //Assert
+        Assert.assertEquals(25, all.size());
+        Assert.assertEquals("Book 00", all.get(0).getTitle());
+        Assert.assertEquals("Twain", all.get(24).getAuthor().getLastName());
+        Assert.assertNotNull(first);
+        Assert.assertEquals(5, first.getBooks().size());
+        BookPage second = provider.findBook(palacio, 10, first.getContinuationKey()).block();
+        Assert.assertNotNull(second);
+        Assert.assertEquals(8, second.getBooks().size());
+        Assert.assertEquals("Book 24", second.getBooks().get(7).getTitle());
+        Assert.assertNull(second.getContinuationKey());
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that an author range holds every book whose author's last name is in it, including last names that
+     * start with the end of the range, and that it can be paged through.
+     */
+    @Test
+    public void testAuthorRange() {
+        //Arrange
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        URI cover = new File(root, "Wonder.png").toURI();
+        provider.saveBooks(Flux.just("Austen", "Melville", "Morrison", "Nabokov", "Orwell", "Mitchell", "Naylor")
+            .map(lastName -> new Book("Book by " + lastName, new Author("A", lastName), cover))).blockLast();
+        //Act
+        BookPage first = provider.findBooks("M", "N", 3, null).block();
+        //Assert
+        Assert.assertNotNull(first);
+        Assert.assertEquals(Arrays.asList("Melville", "Mitchell", "Morrison"), lastNames(first));
+        BookPage second = provider.findBooks("M", "N", 3, first.getContinuationKey()).block();
+        Assert.assertNotNull(second);
+        Assert.assertEquals(Arrays.asList("Nabokov", "Naylor"), lastNames(second));
+        Assert.assertNull(second.getContinuationKey());
+        StepVerifier.create(provider.findBooks("N", "M", 3, null).map(page -> page.getBooks().size()))
+            .expectNext(0)
+            .verifyComplete();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that saves and deletes from several threads, for the same and for different authors, leave the
+     * catalog matching what was written while readers keep listing it.
+     *
+     * @throws Exception if a thread fails
+     */
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        //Arrange
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        URI cover = new File(root, "Wonder.png").toURI();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        //Act
+        for (int thread = 0; thread < 8; thread++) {
+            int number = thread;
+            futures.add(executor.submit(() -> {
+                Author author = new Author("Writer", "Number" + number % 4);
+                for (int i = 0; i < 25; i++) {
+                    provider.saveBook("Book " + number + "-" + i, author, cover).block();
+                    provider.getBooks().count().block();
+                }
+                for (int i = 0; i < 25; i += 5) {
+                    provider.deleteBook(new Book("Book " + number + "-" + i, author, cover)).block();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        //Assert
+        StepVerifier.create(provider.getBooks().count()).expectNext(160L).verifyComplete();
+        StepVerifier.create(provider.findBook(new Author("Writer", "Number2")).count()).expectNext(40L)
+            .verifyComplete();
+        provider.closeStorage();
+        LocalDocumentProvider reloaded = new LocalDocumentProvider(root);
+        StepVerifier.create(reloaded.getBooks().count()).expectNext(160L).verifyComplete();
+        reloaded.closeStorage();
+    }
+
+    /**
+     * Verifies that saving a book replaces the stored book with the same key, even when it's stored under a
+     * directory without the trailing period of the author's name.
+     */
+    @Test
+    public void testSaveReplacesDuplicate() {
+        //Arrange
+        URI cover = new File(root, "Hobbit.png").toURI();
+        Book stored = new Book("The Hobbit", new Author("J.R.R", "Tolkien"), cover);
+        Assert.assertTrue(new JsonHandler().writeJSON(stored, root));
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        //Act
+        provider.saveBook("The Hobbit", new Author("J.R.R.", "Tolkien"), cover).block();
+        //Assert
+        StepVerifier.create(provider.findBook("The Hobbit").map(book -> book.getAuthor().getFirstName()))
+            .expectNext("J.R.R.")
+            .verifyComplete();
+        Assert.assertFalse(new JsonHandler().getJsonFile(stored, root).exists());
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that deleting an author's last book removes the author's directories but leaves the others.
+     */
+    @Test
+    public void testDeletePrunesEmptyDirectories() {
+        //Arrange
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        URI cover = new File(root, "Wonder.png").toURI();
+        Book wonder = new Book("Wonder", new Author("RJ", "Palacio"), cover);
+        provider.saveBook("Wonder", wonder.getAuthor(), cover).block();
+        provider.saveBook("Pluto", wonder.getAuthor(), cover).block();
+        provider.saveBook("Emma", new Author("Jane", "Austen"), cover).block();
+        File firstName = new JsonHandler().getJsonFile(wonder, root).getParentFile();
+        //Act
+        provider.deleteBook(wonder).block();
+        //Assert
+        Assert.assertTrue(firstName.isDirectory());
+        //Act
+        provider.deleteBook(new Book("Pluto", wonder.getAuthor(), cover)).block();
+        //Assert
+        Assert.assertFalse(firstName.getParentFile().exists());
+        Assert.assertTrue(firstName.getParentFile().getParentFile().isDirectory());
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that path listing builds the catalog from the JSON files' paths, in both layouts, and reads a file
+     * only when its book's cover is asked for.
+     *
+     * @throws IOException if a JSON file can't be overwritten
+     */
+    @Test
+    public void testPathListing() throws IOException {
+        //Arrange
+        URI cover = new File(root, "Wonder.png").toURI();
+        Author palacio = new Author("RJ", "Palacio");
+        LocalDocumentProvider saved = new LocalDocumentProvider(root);
+        saved.saveBook("Wonder", palacio, cover).block();
+        saved.closeStorage();
+        LocalDocumentProvider sharded = new LocalDocumentProvider(root, false, 1, LibraryLayout.SHARDED);
+        sharded.saveBook("Emma", new Author("Jane", "Austen"), cover).block();
+        sharded.closeStorage();
+        URI wonderCover = LocalDocumentProvider.relativeCover("Wonder", palacio, cover);
+        //Act
+        LocalDocumentProvider provider = new LocalDocumentProvider(root, false, 1, LibraryLayout.FLAT, true);
+        Files.write(new JsonHandler().getJsonFile(new Book("Emma", new Author("Jane", "Austen"), cover), root,
+            LibraryLayout.SHARDED).toPath(), "not a book".getBytes(StandardCharsets.UTF_8));
+        //Assert
+        StepVerifier.create(provider.getBooks(10, null).flatMapIterable(BookPage::getBooks).map(Book::toString))
+            .expectNext("Austen, Jane - Emma", "Palacio, RJ - Wonder")
+            .verifyComplete();
+        StepVerifier.create(provider.findBook(palacio).map(Book::getCover)).expectNext(wonderCover).verifyComplete();
+        StepVerifier.create(provider.findBook("Emma").map(Book::isValid)).expectNext(false).verifyComplete();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that the full listing is in the same author and title order as the pages.
+     */
+    @Test
+    public void testListingMatchesPages() {
+        //Arrange
+        URI cover = new File(root, "Wonder.png").toURI();
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        provider.saveBook("Wonder", new Author("RJ", "Palacio"), cover).block();
+        provider.saveBook("Persuasion", new Author("Jane", "Austen"), cover).block();
+        provider.saveBook("Emma", new Author("Jane", "Austen"), cover).block();
+        //Act
+        BookPage page = provider.getBooks(10, null).block();
+        //Assert
+        Assert.assertNotNull(page);
+        StepVerifier.create(provider.getBooks().map(Book::getTitle))
+            .expectNext("Emma", "Persuasion", "Wonder")
+            .verifyComplete();
+        Assert.assertEquals(page.getBooks(), provider.getBooks().collectList().block());
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that paging by id returns the books in the order they were made.
+     */
+    @Test
+    public void testPagesById() {
+        //Arrange
+        URI cover = new File(root, "Wonder.png").toURI();
+        LocalDocumentProvider provider = new LocalDocumentProvider(root);
+        provider.saveBooks(Flux.just("Wonder", "Auggie", "Pluto", "Julian", "Christopher")
+            .map(title -> new Book(title, new Author("RJ", "Palacio"), cover))).blockLast();
+        //Act
+        List<String> titles = new ArrayList<>();
+        String key = null;
+        do {
+            BookPage page = provider.getBooksById(2, key).block();
+            Assert.assertNotNull(page);
+            page.getBooks().forEach(book -> titles.add(book.getTitle()));
+            key = page.getContinuationKey();
+        } while (key != null);
+        //Assert
+        Assert.assertEquals(5, titles.size());
+        Assert.assertEquals("[Wonder, Auggie, Pluto, Julian, Christopher]", titles.toString());
+        provider.closeStorage();
+    }
+
+    /**
+     * Polls the condition until it holds or five seconds have passed.
+     *
+     * @param condition - the condition to check
+     * @return true if the condition held before the timeout
+     */
+    private static boolean waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> lastNames(BookPage page) {
+        List<String> names = new ArrayList<>();
+        page.getBooks().forEach(book -> names.add(book.getAuthor().getLastName()));
+        return names;
+    }
+}
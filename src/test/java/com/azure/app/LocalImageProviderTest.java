@@ -0,0 +1,53 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.test.StepVerifier;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+
+import static com.azure.app.Constants.IMAGE_PATH;
+
+public class LocalImageProviderTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verifies that saving a cover with another extension replaces the book's old cover, including one that was
+     * already there when the provider started.
+     *
+     * @throws URISyntaxException if a test image can't be found
+     */
+    @Test
+    public void testCoverReplacesOtherExtension() throws URISyntaxException {
+        //Arrange
+        String root = folder.getRoot().toString();
+        Author author = new Author("RJ", "Palacio");
+        URI jpg = LocalImageProviderTest.class.getClassLoader().getResource("KK8.jpg").toURI();
+        URI png = LocalImageProviderTest.class.getClassLoader().getResource("Wonder.png").toURI();
+        File directory = Paths.get(root, IMAGE_PATH, "Palacio", "RJ").toFile();
+        StepVerifier.create(new LocalImageProvider(root).saveImage(new Book("Wonder Book", author, jpg)))
+            .verifyComplete();
+        LocalImageProvider provider = new LocalImageProvider(root);
+        //Act
+        StepVerifier.create(provider.saveImage(new Book("Wonder Book", author, png)))
+            .verifyComplete();
+        //Assert
+        Assert.assertFalse(new File(directory, "Wonder-Book.jpg").exists());
+        Assert.assertTrue(new File(directory, "Wonder-Book.png").exists());
+        //Act
+        StepVerifier.create(provider.saveImage(new Book("Wonder Book", author, jpg)))
+            .verifyComplete();
+        //Assert
+        Assert.assertFalse(new File(directory, "Wonder-Book.png").exists());
+        Assert.assertTrue(new File(directory, "Wonder-Book.jpg").exists());
+    }
+}
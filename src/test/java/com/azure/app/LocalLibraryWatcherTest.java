@@ -0,0 +1,61 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LocalLibraryWatcherTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verifies that a steady stream of writes, with no quiet interval for the debounce to end on, is still reported
+     * once the maximum delay has passed.
+     *
+     * @throws Exception if a file can't be written or the watcher can't be set up
+     */
+    @Test
+    public void testSteadyWritesFlushedAfterMaxDelay() throws Exception {
+        //Arrange
+        Path jsonRoot = folder.getRoot().toPath();
+        Path directory = Files.createDirectories(jsonRoot.resolve("Palacio").resolve("RJ"));
+        CountDownLatch changed = new CountDownLatch(1);
+        LocalLibraryWatcher watcher = new LocalLibraryWatcher(jsonRoot, new LocalLibraryWatcher.Listener() {
+            @Override
+            public void fileChanged(File file) {
+                changed.countDown();
+            }
+
+            @Override
+            public void fileDeleted(File file) {
+            }
+
+            @Override
+            public void rescan() {
+                changed.countDown();
+            }
+        });
+        watcher.start();
+        long writeUntil = System.currentTimeMillis() + 3 * LocalLibraryWatcher.MAX_DELAY_MILLIS;
+        //Act
+        int count = 0;
+        while (changed.getCount() > 0 && System.currentTimeMillis() < writeUntil) {
+            Files.write(directory.resolve("Book" + count++ + ".json"), "{}".getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(LocalLibraryWatcher.DEBOUNCE_MILLIS / 4);
+        }
+        //Assert
+        Assert.assertTrue(changed.await(0, TimeUnit.MILLISECONDS));
+        watcher.close();
+    }
+}
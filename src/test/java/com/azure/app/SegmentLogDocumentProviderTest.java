@@ -0,0 +1,185 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.test.StepVerifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SegmentLogDocumentProviderTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private String root;
+    private URI cover;
+
+    /**
+     * Points the tests at their temporary library and the cover the books share.
+     */
+    @Before
+    public void setUp() {
+        root = folder.getRoot().toString();
+        cover = new File(root, "Wonder.png").toURI();
+    }
+
+    /**
+     * Verifies saving, overwriting, finding and deleting books.
+     */
+    @Test
+    public void testSaveFindAndDelete() {
+        //Arrange
+        SegmentLogDocumentProvider provider = new SegmentLogDocumentProvider(root);
+        Author author = new Author("RJ", "Palacio");
+        //Act
+        provider.saveBook("Wonder", author, cover).block();
+        provider.saveBook("Wonder", author, cover).block();
+        provider.saveBook("Pluto", author, cover).block();
+        //Assert
+        StepVerifier.create(provider.findBook("Wonder"))
+            .assertNext(book -> Assert.assertEquals("Wonder", book.getTitle()))
+            .verifyComplete();
+        StepVerifier.create(provider.findBook(author).count()).expectNext(2L).verifyComplete();
+        StepVerifier.create(provider.deleteBook(new Book("Wonder", author, cover))).verifyComplete();
+        StepVerifier.create(provider.findBook("Wonder")).verifyComplete();
+        StepVerifier.create(provider.deleteBook(new Book("Wonder", author, cover))).verifyError();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that books and tombstones survive a restart, and that a torn record at the end of the log is dropped.
+     *
+     * @throws IOException if the segment can't be appended to
+     */
+    @Test
+    public void testRecovery() throws IOException {
+        //Arrange
+        SegmentLogDocumentProvider provider = new SegmentLogDocumentProvider(root);
+        Author author = new Author("RJ", "Palacio");
+        provider.saveBook("Wonder", author, cover).block();
+        provider.saveBook("Pluto", author, cover).block();
+        provider.deleteBook(new Book("Pluto", author, cover)).block();
+        provider.closeStorage();
+        File segment = Paths.get(root, SegmentLogDocumentProvider.SEGMENT_PATH, "segment-0000000001.log").toFile();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.write(1);
+        }
+        //Act
+        provider = new SegmentLogDocumentProvider(root);
+        //Assert
+        StepVerifier.create(provider.getBooks())
+            .assertNext(book -> Assert.assertEquals("Wonder", book.getTitle()))
+            .verifyComplete();
+        provider.saveBook("Auggie & Me", author, cover).block();
+        StepVerifier.create(provider.getBooks().count()).expectNext(2L).verifyComplete();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that an edit's new book and the old book's tombstone are replayed together, and that an edit whose
+     * tombstone was lost in a crash is dropped as a whole.
+     *
+     * @throws IOException if the segment can't be cut short
+     */
+    @Test
+    public void testEditIsAtomic() throws IOException {
+        //Arrange
+        SegmentLogDocumentProvider provider = new SegmentLogDocumentProvider(root);
+        Author author = new Author("RJ", "Palacio");
+        provider.saveBook("Wonder", author, cover).block();
+        Book wonder = provider.findBook("Wonder").blockFirst();
+        Assert.assertNotNull(wonder);
+        //Act
+        provider.editBook(wonder, new Book("Auggie & Me", author, cover), true).block();
+        provider.closeStorage();
+        provider = new SegmentLogDocumentProvider(root);
+        //Assert
+        StepVerifier.create(provider.getBooks().map(Book::getTitle)).expectNext("Auggie & Me").verifyComplete();
+        provider.closeStorage();
+        //Act
+        File segment = Paths.get(root, SegmentLogDocumentProvider.SEGMENT_PATH, "segment-0000000001.log").toFile();
+        int tombstone = 9 + "Palacio/RJ/Wonder".length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - tombstone);
+        }
+        provider = new SegmentLogDocumentProvider(root);
+        //Assert
+        StepVerifier.create(provider.getBooks().map(Book::getTitle)).expectNext("Wonder").verifyComplete();
+        provider.saveBook("Pluto", author, cover).block();
+        StepVerifier.create(provider.getBooks().count()).expectNext(2L).verifyComplete();
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that compaction keeps only the live books and that they're still there after a restart.
+     *
+     * @throws IOException if compaction fails
+     */
+    @Test
+    public void testCompaction() throws IOException {
+        //Arrange
+        SegmentLogDocumentProvider provider = new SegmentLogDocumentProvider(root, 512);
+        Author author = new Author("RJ", "Palacio");
+        for (int i = 0; i < 20; i++) {
+            provider.saveBook("Wonder", author, cover).block();
+            provider.saveBook("Book " + i, author, cover).block();
+            if (i % 2 == 0) {
+                provider.deleteBook(new Book("Book " + i, author, cover)).block();
+            }
+        }
+        //Act
+        provider.compact();
+        provider.closeStorage();
+        provider = new SegmentLogDocumentProvider(root, 512);
+        //Assert
+        List<String> titles = provider.getBooks().map(Book::getTitle).collectList().block();
+        Assert.assertNotNull(titles);
+        Assert.assertEquals(11, titles.size());
+        Assert.assertTrue(titles.contains("Wonder"));
+        Assert.assertTrue(titles.contains("Book 19"));
+        Assert.assertFalse(titles.contains("Book 18"));
+        try (Stream<Path> list = Files.list(Paths.get(root, SegmentLogDocumentProvider.SEGMENT_PATH))) {
+            List<Path> segments = list.collect(Collectors.toList());
+            Assert.assertTrue("Expected the sealed segments to be merged: " + segments, segments.size() <= 3);
+        }
+        provider.closeStorage();
+    }
+
+    /**
+     * Verifies that a log written with the JSON codec can be reopened with the binary codec, and that records in both
+     * formats are read back after a restart.
+     */
+    @Test
+    public void testCodecChange() {
+        //Arrange
+        Author author = new Author("RJ", "Palacio");
+        SegmentLogDocumentProvider provider = new SegmentLogDocumentProvider(root, BookCodec.JSON);
+        provider.saveBook("Wonder", author, cover).block();
+        provider.closeStorage();
+        //Act
+        provider = new SegmentLogDocumentProvider(root, BookCodec.BINARY);
+        provider.saveBook("Pluto", author, cover).block();
+        provider.closeStorage();
+        provider = new SegmentLogDocumentProvider(root, BookCodec.BINARY);
+        //Assert
+        StepVerifier.create(provider.findBook(author).map(Book::getTitle).sort())
+            .expectNext("Pluto", "Wonder")
+            .verifyComplete();
+        provider.closeStorage();
+    }
+}
@@ -0,0 +1,76 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.app;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TitleIndexTest {
+    private TitleIndex index;
+    private Author author;
+
+    /**
+     * Fills an index with a few titles.
+     */
+    @Before
+    public void setUp() {
+        index = new TitleIndex();
+        author = new Author("J.R.R.", "Tolkien");
+        URI cover = new File("cover.png").toURI();
+        for (String title : new String[]{"The Hobbit", "The Fellowship of the Ring", "The Two Towers",
+            "The Return of the King", "Pok\u00e9mon Adventures"}) {
+            index.add(new Book(title, author, cover));
+        }
+    }
+
+    /**
+     * Verifies that prefixes match regardless of case, accents and spacing.
+     */
+    @Test
+    public void testPrefix() {
+        //Act
+        List<String> the = titles(index.search("the", 10));
+        List<String> pokemon = titles(index.search("  POKEMON ", 10));
+        //Assert
+        Assert.assertEquals(4, the.size());
+        Assert.assertEquals("The Fellowship of the Ring", the.get(0));
+        Assert.assertEquals(1, pokemon.size());
+    }
+
+    /**
+     * Verifies that a query with typos still finds the title, and that the limit is respected.
+     */
+    @Test
+    public void testTypos() {
+        //Act
+        List<String> hobbit = titles(index.search("teh hobbit", 10));
+        List<String> limited = titles(index.search("the", 2));
+        //Assert
+        Assert.assertEquals(1, hobbit.size());
+        Assert.assertEquals("The Hobbit", hobbit.get(0));
+        Assert.assertEquals(2, limited.size());
+    }
+
+    /**
+     * Verifies that removed books are no longer found.
+     */
+    @Test
+    public void testRemove() {
+        //Act
+        index.remove(new Book("The Hobbit", author, new File("other.png").toURI()));
+        //Assert
+        Assert.assertTrue(index.search("the hob", 10).isEmpty());
+        Assert.assertTrue(index.search("teh hobbit", 10).isEmpty());
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).collect(Collectors.toList());
+    }
+}